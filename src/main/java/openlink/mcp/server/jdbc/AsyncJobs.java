@@ -0,0 +1,294 @@
+package openlink.mcp.server.jdbc;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+
+/**
+ * Runs slow calls, such as the DEMO.DBA.OAI_* procedures, either on the
+ * caller's thread or, as jobs, in the background.
+ *
+ * Identical calls that are in flight at the same time share one execution
+ * (single flight), successful results are kept in a bounded LRU cache for
+ * jdbc.ai.cache_ttl_s, and every call can be tracked as a job by its id.
+ * Finished jobs are forgotten after jdbc.ai.job_retention_s.
+ */
+@ApplicationScoped
+public class AsyncJobs {
+
+    @ConfigProperty(name = "jdbc.ai.threads")
+    Optional<Integer> THREADS;
+
+    @ConfigProperty(name = "jdbc.ai.cache_size")
+    Optional<Integer> CACHE_SIZE;
+
+    @ConfigProperty(name = "jdbc.ai.cache_ttl_s")
+    Optional<Long> CACHE_TTL_S;
+
+    @ConfigProperty(name = "jdbc.ai.job_retention_s")
+    Optional<Long> JOB_RETENTION_S;
+
+    private volatile ExecutorService executor;
+
+    private final Map<String, CompletableFuture<String>> inflight = new ConcurrentHashMap<>();
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final Map<String, Cached> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest)
+        {
+            return size() > CACHE_SIZE.orElse(256);
+        }
+    };
+
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+
+    private static class Cached {
+        final String value;
+        final long expires;
+
+        Cached(String value, long expires)
+        {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+
+    static class Job {
+        final String id;
+        final String tool;
+        final long submitted = System.currentTimeMillis();
+        final CompletableFuture<String> result;
+        volatile long finished;
+
+        Job(String id, String tool, CompletableFuture<String> result)
+        {
+            this.id = id;
+            this.tool = tool;
+            this.result = result;
+        }
+    }
+
+
+    @PreDestroy
+    void shutdown()
+    {
+        if (executor != null)
+            executor.shutdownNow();
+    }
+
+
+    /**
+     * Runs call on the caller's thread and returns its result, unless an
+     * identical call is in flight or cached. The parts make up the identity
+     * of the call and are only kept as a hash.
+     */
+    public String call(Callable<String> call, String... parts) throws Exception
+    {
+        String key = key(parts);
+        String hit = cached(key);
+        if (hit != null) {
+            cacheHits.increment();
+            return hit;
+        }
+
+        CompletableFuture<String> created = new CompletableFuture<>();
+        CompletableFuture<String> running = inflight.putIfAbsent(key, created);
+        if (running == null) {
+            executed.increment();
+            run(key, created, call);
+        } else {
+            coalesced.increment();
+        }
+        try {
+            return (running != null ? running : created).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception)
+                throw (Exception) e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Like call, but runs on the jdbc.ai.threads pool and returns at once.
+     */
+    public CompletableFuture<String> submit(Callable<String> call, String... parts)
+    {
+        String key = key(parts);
+        String hit = cached(key);
+        if (hit != null) {
+            cacheHits.increment();
+            return CompletableFuture.completedFuture(hit);
+        }
+
+        CompletableFuture<String> created = new CompletableFuture<>();
+        CompletableFuture<String> running = inflight.putIfAbsent(key, created);
+        if (running != null) {
+            coalesced.increment();
+            return running;
+        }
+
+        executed.increment();
+        executor().execute(() -> run(key, created, call));
+        return created;
+    }
+
+    private void run(String key, CompletableFuture<String> created, Callable<String> call)
+    {
+        try {
+            String value = call.call();
+            cache(key, value);
+            created.complete(value);
+        } catch (Throwable e) {
+            created.completeExceptionally(e);
+        } finally {
+            inflight.remove(key, created);
+        }
+    }
+
+    /** Like submit, but tracked as a job that can be polled by its id. */
+    public Job start(String tool, Callable<String> call, String... parts)
+    {
+        purgeJobs();
+        Job job = new Job(UUID.randomUUID().toString(), tool, submit(call, parts));
+        job.result.whenComplete((v, e) -> job.finished = System.currentTimeMillis());
+        jobs.put(job.id, job);
+        return job;
+    }
+
+    /**
+     * Returns the status of a job, waiting up to waitMs for it to finish,
+     * or null if the job is unknown.
+     */
+    public Map<String, Object> status(String id, long waitMs) throws InterruptedException
+    {
+        Job job = jobs.get(id);
+        if (job == null)
+            return null;
+
+        if (waitMs > 0) {
+            try {
+                job.result.get(waitMs, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+                // reported below
+            }
+        }
+
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("job_id", job.id);
+        s.put("tool", job.tool);
+        if (!job.result.isDone()) {
+            s.put("status", "running");
+            s.put("elapsed_ms", System.currentTimeMillis() - job.submitted);
+            return s;
+        }
+        try {
+            String value = job.result.get();
+            s.put("status", "done");
+            s.put("result", value);
+        } catch (ExecutionException e) {
+            s.put("status", "failed");
+            s.put("error", e.getCause().getMessage());
+        }
+        s.put("elapsed_ms", Math.max(0, job.finished - job.submitted));
+        return s;
+    }
+
+    public Map<String, Object> stats()
+    {
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("executed", executed.sum());
+        s.put("coalesced", coalesced.sum());
+        s.put("cache_hits", cacheHits.sum());
+        s.put("in_flight", inflight.size());
+        s.put("jobs", jobs.size());
+        synchronized (cache) {
+            s.put("cached", cache.size());
+        }
+        return s;
+    }
+
+
+    private ExecutorService executor()
+    {
+        if (executor == null) {
+            synchronized (this) {
+                if (executor == null) {
+                    executor = Executors.newFixedThreadPool(THREADS.orElse(8), r -> {
+                        Thread t = new Thread(r, "jdbc-async");
+                        t.setDaemon(true);
+                        return t;
+                    });
+                }
+            }
+        }
+        return executor;
+    }
+
+    private String cached(String key)
+    {
+        synchronized (cache) {
+            Cached c = cache.get(key);
+            if (c == null)
+                return null;
+            if (System.currentTimeMillis() >= c.expires) {
+                cache.remove(key);
+                return null;
+            }
+            return c.value;
+        }
+    }
+
+    private void cache(String key, String value)
+    {
+        long ttl = CACHE_TTL_S.orElse(3600L);
+        if (value == null || ttl <= 0 || CACHE_SIZE.orElse(256) <= 0)
+            return;
+        synchronized (cache) {
+            cache.put(key, new Cached(value, System.currentTimeMillis() + ttl * 1000));
+        }
+    }
+
+    private void purgeJobs()
+    {
+        long cutoff = System.currentTimeMillis() - JOB_RETENTION_S.orElse(600L) * 1000;
+        jobs.values().removeIf(j -> j.finished != 0 && j.finished < cutoff);
+    }
+
+    private static String key(String... parts)
+    {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            for (String p : parts) {
+                md.update((byte) (p == null ? 0 : 1));
+                if (p != null)
+                    md.update(p.getBytes(StandardCharsets.UTF_8));
+                md.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(md.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package openlink.mcp.server.jdbc;
+
+
+/**
+ * Per JDBC URL circuit breaker.
+ *
+ * CLOSED lets every call through and counts consecutive failures. After
+ * failureThreshold failures it trips to OPEN and calls fail fast until the
+ * backoff expires or a background probe succeeds. HALF_OPEN lets a single
+ * trial call through; its outcome closes or re-opens the circuit. Each
+ * consecutive trip doubles the backoff, up to maxBackoffMs.
+ */
+class CircuitBreaker {
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long baseBackoffMs;
+    private final long maxBackoffMs;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private int trips;
+    private long openUntil;
+    private boolean trialInFlight;
+
+    CircuitBreaker(int failureThreshold, long baseBackoffMs, long maxBackoffMs)
+    {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.baseBackoffMs = Math.max(1, baseBackoffMs);
+        this.maxBackoffMs = Math.max(this.baseBackoffMs, maxBackoffMs);
+    }
+
+    /** Returns true if a call may proceed, false if it has to fail fast. */
+    synchronized boolean tryAcquire(long now)
+    {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (now < openUntil)
+                    return false;
+                state = State.HALF_OPEN;
+                trialInFlight = true;
+                return true;
+            default:
+                if (trialInFlight)
+                    return false;
+                trialInFlight = true;
+                return true;
+        }
+    }
+
+    synchronized void onSuccess()
+    {
+        state = State.CLOSED;
+        failures = 0;
+        trips = 0;
+        trialInFlight = false;
+    }
+
+    /**
+     * Returns true if this failure tripped the circuit open. Failures of calls
+     * that were let through before the circuit opened do not extend the backoff.
+     */
+    synchronized boolean onFailure(long now)
+    {
+        failures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= failureThreshold)) {
+            trip(now);
+            return true;
+        }
+        return false;
+    }
+
+    /** A background probe failed: stay open and double the backoff. */
+    synchronized void onProbeFailure(long now)
+    {
+        failures++;
+        if (state != State.CLOSED || failures >= failureThreshold)
+            trip(now);
+    }
+
+    /** A background probe reached the server: let the next call through as a trial. */
+    synchronized void onProbeSuccess()
+    {
+        if (state == State.OPEN) {
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+    }
+
+    private void trip(long now)
+    {
+        state = State.OPEN;
+        trips++;
+        trialInFlight = false;
+        openUntil = now + backoffMs();
+    }
+
+    private long backoffMs()
+    {
+        int shift = Math.min(trips - 1, 30);
+        long backoff = baseBackoffMs << shift;
+        return (backoff <= 0 || backoff > maxBackoffMs) ? maxBackoffMs : backoff;
+    }
+
+    synchronized State state()
+    {
+        return state;
+    }
+
+    synchronized int failures()
+    {
+        return failures;
+    }
+
+    synchronized long retryInMs(long now)
+    {
+        return state == State.OPEN ? Math.max(0, openUntil - now) : 0;
+    }
+}
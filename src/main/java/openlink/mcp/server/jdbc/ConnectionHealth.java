@@ -0,0 +1,343 @@
+package openlink.mcp.server.jdbc;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.SQLNonTransientConnectionException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.StartupEvent;
+
+
+/**
+ * Tracks the health of every JDBC URL the server connects to.
+ *
+ * Connections are opened through a per-URL CircuitBreaker, so a database
+ * that is down makes calls fail fast instead of each one waiting for the
+ * driver login timeout. Open circuits of jdbc.url and jdbc.replica_urls are
+ * probed in the background with exponential backoff and those URLs are
+ * re-validated periodically. URLs passed by callers are only checked by their
+ * own calls and are forgotten once they have not been used for a while.
+ */
+@ApplicationScoped
+public class ConnectionHealth {
+
+    @ConfigProperty(name = "jdbc.url")
+    String jdbcUrl;
+
+    @ConfigProperty(name = "jdbc.user")
+    Optional<String> jdbcUser;
+
+    @ConfigProperty(name = "jdbc.password")
+    Optional<String> jdbcPassword;
+
+    @ConfigProperty(name = "jdbc.replica_urls")
+    Optional<List<String>> REPLICA_URLS;
+
+    @ConfigProperty(name = "jdbc.health.failure_threshold")
+    Optional<Integer> FAILURE_THRESHOLD;
+
+    @ConfigProperty(name = "jdbc.health.backoff_ms")
+    Optional<Long> BACKOFF_MS;
+
+    @ConfigProperty(name = "jdbc.health.max_backoff_ms")
+    Optional<Long> MAX_BACKOFF_MS;
+
+    @ConfigProperty(name = "jdbc.health.validate_interval_ms")
+    Optional<Long> VALIDATE_INTERVAL_MS;
+
+    @ConfigProperty(name = "jdbc.health.validate_timeout_s")
+    Optional<Integer> VALIDATE_TIMEOUT_S;
+
+    @ConfigProperty(name = "jdbc.health.login_timeout_s")
+    Optional<Integer> LOGIN_TIMEOUT_S;
+
+    @ConfigProperty(name = "jdbc.health.idle_timeout_ms")
+    Optional<Long> IDLE_TIMEOUT_MS;
+
+    @ConfigProperty(name = "jdbc.health.warmup")
+    Optional<Boolean> WARMUP;
+
+    private final Map<String, Target> targets = new ConcurrentHashMap<>();
+
+    // the error connect() already counted on this thread, so recordError() skips it
+    private final ThreadLocal<Throwable> counted = new ThreadLocal<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "jdbc-health");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** Thrown instead of connecting while a circuit is open. */
+    static class CircuitOpenException extends SQLTransientConnectionException {
+        CircuitOpenException(String reason)
+        {
+            super(reason, "08001");
+        }
+    }
+
+    private static class Target {
+        final String url;
+        // jdbc.url or one of jdbc.replica_urls, checked in the background
+        final boolean configured;
+        final CircuitBreaker breaker;
+        volatile long lastConnectMs = -1;
+        volatile long lastCheck;
+        volatile long lastUsed = System.currentTimeMillis();
+        volatile String lastError;
+        volatile boolean probeScheduled;
+
+        Target(String url, boolean configured, CircuitBreaker breaker)
+        {
+            this.url = url;
+            this.configured = configured;
+            this.breaker = breaker;
+        }
+    }
+
+
+    void onStart(@Observes StartupEvent ev)
+    {
+        // also bounds the probes, which run on a single thread
+        DriverManager.setLoginTimeout(LOGIN_TIMEOUT_S.orElse(10));
+
+        if (WARMUP.orElse(true) && jdbcUrl != null && !jdbcUrl.isEmpty()) {
+            Target t = target(jdbcUrl);
+            scheduler.execute(() -> probe(t));
+        }
+
+        long interval = VALIDATE_INTERVAL_MS.orElse(30000L);
+        if (interval > 0)
+            scheduler.scheduleWithFixedDelay(this::validateAll, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown()
+    {
+        scheduler.shutdownNow();
+    }
+
+
+    /**
+     * Opens a connection to url, or throws right away if its circuit is open.
+     */
+    public Connection connect(String url, String user, String password) throws SQLException
+    {
+        Target t = target(url);
+        long now = System.currentTimeMillis();
+
+        if (!t.breaker.tryAcquire(now)) {
+            throw new CircuitOpenException("Connection to " + maskUrl(url)
+                + " is unavailable (circuit " + t.breaker.state() + ", retry in "
+                + t.breaker.retryInMs(now) + " ms). Last error: " + t.lastError);
+        }
+
+        long start = System.nanoTime();
+        try {
+            Connection conn = DriverManager.getConnection(url, user, password);
+            t.lastConnectMs = (System.nanoTime() - start) / 1000000;
+            t.breaker.onSuccess();
+            return conn;
+        } catch (SQLException e) {
+            // e.g. a wrong password (SQLState 28xxx) says nothing about the server's health
+            counted.set(e);
+            if (isConnectionError(e))
+                failed(t, e);
+            else
+                t.breaker.onSuccess();
+            throw e;
+        } catch (RuntimeException | Error e) {
+            // a driver bug must not leave a half open circuit's trial in flight forever
+            counted.set(e);
+            failed(t, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Records an error raised while using a connection to url. Only connection
+     * level errors count as failures; other errors still prove the server is up.
+     * Errors thrown by connect() itself are already accounted for.
+     */
+    public void recordError(String url, Throwable e)
+    {
+        Throwable seen = counted.get();
+        counted.remove();
+        for (Throwable c = e; c != null; c = c.getCause()) {
+            if (c == seen || c instanceof CircuitOpenException)
+                return;
+        }
+
+        Target t = url != null ? targets.get(url) : null;
+        if (t == null)
+            return;
+        if (isConnectionError(e))
+            failed(t, e);
+        else
+            t.breaker.onSuccess();
+    }
+
+    /** Returns true if url is known and its circuit is currently open. */
+    public boolean isOpen(String url)
+    {
+        Target t = targets.get(url);
+        return t != null && t.breaker.state() == CircuitBreaker.State.OPEN;
+    }
+
+    public List<Map<String, Object>> status()
+    {
+        long now = System.currentTimeMillis();
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (Target t : targets.values()) {
+            Map<String, Object> s = new LinkedHashMap<>();
+            s.put("url", maskUrl(t.url));
+            s.put("state", t.breaker.state().name());
+            s.put("consecutive_failures", t.breaker.failures());
+            s.put("retry_in_ms", t.breaker.retryInMs(now));
+            s.put("last_connect_ms", t.lastConnectMs);
+            s.put("last_check_ms_ago", t.lastCheck == 0 ? -1 : now - t.lastCheck);
+            s.put("last_error", t.lastError);
+            list.add(s);
+        }
+        return list;
+    }
+
+
+    private Target target(String url)
+    {
+        long now = System.currentTimeMillis();
+        Target t = targets.get(url);
+        if (t == null) {
+            evictIdle(now);
+            t = targets.computeIfAbsent(url, u -> new Target(u, isConfigured(u),
+                new CircuitBreaker(FAILURE_THRESHOLD.orElse(3),
+                                   BACKOFF_MS.orElse(1000L),
+                                   MAX_BACKOFF_MS.orElse(60000L))));
+        }
+        t.lastUsed = now;
+        return t;
+    }
+
+    private boolean isConfigured(String url)
+    {
+        if (url.equals(jdbcUrl))
+            return true;
+        for (String r : REPLICA_URLS.orElse(List.of())) {
+            if (url.equals(r.trim()))
+                return true;
+        }
+        return false;
+    }
+
+    /** Forgets the URLs passed by callers that have not been used for a while. */
+    private void evictIdle(long now)
+    {
+        long idle = IDLE_TIMEOUT_MS.orElse(600000L);
+        targets.values().removeIf(t -> !t.configured && now - t.lastUsed > idle);
+    }
+
+    private void failed(Target t, Throwable e)
+    {
+        t.lastError = e.getMessage();
+        t.breaker.onFailure(System.currentTimeMillis());
+        if (t.breaker.state() == CircuitBreaker.State.OPEN)
+            scheduleProbe(t);
+    }
+
+    private synchronized void scheduleProbe(Target t)
+    {
+        // an open circuit of a caller's URL lets a trial through once its backoff expires
+        if (!t.configured || t.probeScheduled || scheduler.isShutdown())
+            return;
+        t.probeScheduled = true;
+        long delay = t.breaker.retryInMs(System.currentTimeMillis());
+        scheduler.schedule(() -> {
+            t.probeScheduled = false;
+            probe(t);
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void probe(Target t)
+    {
+        t.lastCheck = System.currentTimeMillis();
+        long start = System.nanoTime();
+        // always the configured credentials, never those of a caller
+        try (Connection conn = DriverManager.getConnection(t.url, jdbcUser.orElse(null), jdbcPassword.orElse(null))) {
+            if (!conn.isValid(VALIDATE_TIMEOUT_S.orElse(5)))
+                throw new SQLRecoverableException("Connection validation failed", "08006");
+            t.lastConnectMs = (System.nanoTime() - start) / 1000000;
+            if (t.breaker.state() == CircuitBreaker.State.OPEN)
+                t.breaker.onProbeSuccess();
+            else
+                t.breaker.onSuccess();
+        } catch (SQLException | RuntimeException e) {
+            Log.debugf("Health probe for %s failed: %s", maskUrl(t.url), e.getMessage());
+            if (!isConnectionError(e)) {
+                // the server answered, e.g. with an authentication error
+                if (t.breaker.state() == CircuitBreaker.State.OPEN)
+                    t.breaker.onProbeSuccess();
+                return;
+            }
+            t.lastError = e.getMessage();
+            t.breaker.onProbeFailure(System.currentTimeMillis());
+            if (t.breaker.state() == CircuitBreaker.State.OPEN)
+                scheduleProbe(t);
+        }
+    }
+
+    private void validateAll()
+    {
+        evictIdle(System.currentTimeMillis());
+        for (Target t : targets.values()) {
+            // a successful probe also closes a half open circuit whose trial never reported back
+            if (t.configured && t.breaker.state() != CircuitBreaker.State.OPEN)
+                probe(t);
+        }
+    }
+
+
+    static boolean isConnectionError(Throwable e)
+    {
+        for (Throwable c = e; c != null; c = c.getCause()) {
+            if (c instanceof SQLTransientConnectionException
+                || c instanceof SQLNonTransientConnectionException
+                || c instanceof SQLRecoverableException
+                || c instanceof SQLTimeoutException)
+                return true;
+            if (c instanceof SQLException) {
+                String state = ((SQLException) c).getSQLState();
+                if (state != null && (state.startsWith("08") || state.startsWith("HYT")))
+                    return true;
+            }
+            // drivers that report a refused or dropped socket with their own SQLState
+            if (c instanceof IOException)
+                return true;
+        }
+        return false;
+    }
+
+    static String maskUrl(String url)
+    {
+        return url == null ? null : url.replaceAll("(?i)(PWD|password)=[^/;&]*", "$1=***");
+    }
+}
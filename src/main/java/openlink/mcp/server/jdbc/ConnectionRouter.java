@@ -0,0 +1,280 @@
+package openlink.mcp.server.jdbc;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+
+/**
+ * Routes connections between the primary jdbc.url and the read replicas
+ * listed in jdbc.replica_urls.
+ *
+ * Writes, and anything that cannot be classified as a read, go to the
+ * primary. Reads go to the replica with the lowest moving-average latency
+ * weighted by its outstanding requests, skipping replicas whose circuit is
+ * open. After a write, reads by the same user stay on the primary for
+ * jdbc.routing.read_your_writes_ms. Calls that pass their own url are not
+ * routed.
+ */
+@ApplicationScoped
+public class ConnectionRouter {
+
+    private static final double EWMA_ALPHA = 0.2;
+    // added to every latency so outstanding requests still count before the first one completes
+    private static final double LATENCY_PRIOR_MS = 1.0;
+
+    private static final Pattern COMMENTS = Pattern.compile("(?s)/\\*.*?\\*/|--[^\\n]*");
+    private static final Pattern SELECT_WRITES = Pattern.compile("\\bINTO\\b|\\bFOR\\s+UPDATE\\b");
+    private static final Pattern CTE_WRITES = Pattern.compile("\\b(INSERT|UPDATE|DELETE|MERGE)\\b");
+    private static final Pattern SPARQL_WRITES = Pattern.compile("\\b(INSERT|DELETE|LOAD|CLEAR|DROP|CREATE|ADD|MOVE|COPY)\\b");
+    private static final Pattern ANALYZE = Pattern.compile("\\bANALY[SZ]E\\b");
+
+    @Inject
+    ConnectionHealth health;
+
+    @ConfigProperty(name = "jdbc.url")
+    String jdbcUrl;
+
+    @ConfigProperty(name = "jdbc.replica_urls")
+    Optional<List<String>> REPLICA_URLS;
+
+    @ConfigProperty(name = "jdbc.routing.read_your_writes_ms")
+    Optional<Long> READ_YOUR_WRITES_MS;
+
+    private Endpoint primary;
+    private final List<Endpoint> replicas = new ArrayList<>();
+    private final Map<String, Long> lastWrite = new ConcurrentHashMap<>();
+    private final ThreadLocal<String> lastRouted = new ThreadLocal<>();
+
+    private final LongAdder explicitUrl = new LongAdder();
+    private final LongAdder readYourWrites = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+
+    private static class Endpoint {
+        final String url;
+        final String role;
+        final AtomicInteger outstanding = new AtomicInteger();
+        final LongAdder reads = new LongAdder();
+        final LongAdder writes = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        volatile double ewmaMs;
+
+        Endpoint(String url, String role)
+        {
+            this.url = url;
+            this.role = role;
+        }
+
+        synchronized void completed(double ms)
+        {
+            ewmaMs = ewmaMs == 0 ? ms : ewmaMs + EWMA_ALPHA * (ms - ewmaMs);
+        }
+
+        double score()
+        {
+            return (ewmaMs + LATENCY_PRIOR_MS) * (outstanding.get() + 1);
+        }
+    }
+
+
+    @PostConstruct
+    void init()
+    {
+        primary = new Endpoint(jdbcUrl, "primary");
+        for (String url : REPLICA_URLS.orElse(List.of())) {
+            if (!url.isBlank())
+                replicas.add(new Endpoint(url.trim(), "replica"));
+        }
+    }
+
+
+    /**
+     * Opens a connection for a read or write, see the class comment for the
+     * routing rules.
+     */
+    public Connection connect(String user, String password, String url, boolean readOnly) throws SQLException
+    {
+        if (url != null) {
+            explicitUrl.increment();
+            lastRouted.set(url);
+            return health.connect(url, user, password);
+        }
+
+        String session = user != null ? user : "";
+        if (!readOnly) {
+            long window = READ_YOUR_WRITES_MS.orElse(0L);
+            if (window > 0)
+                lastWrite.put(session, System.currentTimeMillis() + window);
+            return open(primary, user, password, false);
+        }
+
+        if (replicas.isEmpty())
+            return open(primary, user, password, true);
+
+        Long pinnedUntil = lastWrite.get(session);
+        if (pinnedUntil != null) {
+            if (System.currentTimeMillis() < pinnedUntil) {
+                readYourWrites.increment();
+                return open(primary, user, password, true);
+            }
+            lastWrite.remove(session, pinnedUntil);
+        }
+
+        Endpoint replica = pickReplica();
+        if (replica != null) {
+            try {
+                return open(replica, user, password, true);
+            } catch (SQLException e) {
+                // fall through to the primary
+            }
+        }
+        fallbacks.increment();
+        return open(primary, user, password, true);
+    }
+
+    /** The URL of the last connection opened on this thread, for error accounting. */
+    public String lastRouted()
+    {
+        String url = lastRouted.get();
+        return url != null ? url : jdbcUrl;
+    }
+
+    public Map<String, Object> status()
+    {
+        List<Map<String, Object>> endpoints = new ArrayList<>();
+        endpoints.add(status(primary));
+        for (Endpoint e : replicas)
+            endpoints.add(status(e));
+
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("endpoints", endpoints);
+        s.put("read_your_writes_ms", READ_YOUR_WRITES_MS.orElse(0L));
+        s.put("read_your_writes_pinned", readYourWrites.sum());
+        s.put("fallbacks_to_primary", fallbacks.sum());
+        s.put("explicit_url", explicitUrl.sum());
+        return s;
+    }
+
+
+    private Endpoint pickReplica()
+    {
+        Endpoint best = null;
+        for (Endpoint e : replicas) {
+            if (health.isOpen(e.url))
+                continue;
+            if (best == null || e.score() < best.score())
+                best = e;
+        }
+        return best;
+    }
+
+    private Connection open(Endpoint e, String user, String password, boolean read) throws SQLException
+    {
+        lastRouted.set(e.url);
+        e.outstanding.incrementAndGet();
+        long start = System.nanoTime();
+        Connection conn;
+        try {
+            conn = health.connect(e.url, user, password);
+        } catch (SQLException | RuntimeException ex) {
+            e.outstanding.decrementAndGet();
+            e.errors.increment();
+            throw ex;
+        }
+        if (read)
+            e.reads.increment();
+        else
+            e.writes.increment();
+
+        // the call is over when the tool closes its connection
+        AtomicBoolean closed = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+            new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+                if (method.getName().equals("close") && closed.compareAndSet(false, true)) {
+                    e.outstanding.decrementAndGet();
+                    e.completed((System.nanoTime() - start) / 1e6);
+                }
+                try {
+                    return method.invoke(conn, args);
+                } catch (InvocationTargetException ite) {
+                    throw ite.getCause();
+                }
+            });
+    }
+
+    private static Map<String, Object> status(Endpoint e)
+    {
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("url", ConnectionHealth.maskUrl(e.url));
+        s.put("role", e.role);
+        s.put("reads", e.reads.sum());
+        s.put("writes", e.writes.sum());
+        s.put("errors", e.errors.sum());
+        s.put("outstanding", e.outstanding.get());
+        s.put("latency_ewma_ms", Math.round(e.ewmaMs * 100) / 100.0);
+        return s;
+    }
+
+
+    /**
+     * Returns true if sql can safely run on a replica. Anything unclear is
+     * treated as a write.
+     */
+    static boolean isReadOnly(String sql)
+    {
+        if (sql == null)
+            return false;
+        // write keywords and separators are looked for in comments and
+        // literals too, so neither can hide a write
+        String raw = sql.strip().toUpperCase(Locale.ROOT);
+        if (raw.endsWith(";"))
+            raw = raw.substring(0, raw.length() - 1);
+        // a batch such as "SELECT 1; DELETE FROM T" runs every statement on
+        // drivers that allow several per call
+        if (raw.indexOf(';') >= 0)
+            return false;
+
+        String s = COMMENTS.matcher(raw).replaceAll(" ").trim();
+        int end = 0;
+        while (end < s.length() && Character.isLetter(s.charAt(end)))
+            end++;
+
+        switch (s.substring(0, end)) {
+            case "SELECT":
+                // Virtuoso SPASQL can embed SPARQL updates in a SELECT
+                return !SELECT_WRITES.matcher(raw).find()
+                    && !(raw.contains("SPARQL") && SPARQL_WRITES.matcher(raw).find());
+            case "WITH":
+                return !CTE_WRITES.matcher(raw).find() && !SELECT_WRITES.matcher(raw).find();
+            case "SPARQL":
+                return !SPARQL_WRITES.matcher(raw).find();
+            case "EXPLAIN":
+            case "DESCRIBE":
+                // EXPLAIN ANALYZE runs the statement it explains
+                return !ANALYZE.matcher(raw).find();
+            case "SHOW":
+            case "VALUES":
+                return true;
+            default:
+                return false;
+        }
+    }
+}
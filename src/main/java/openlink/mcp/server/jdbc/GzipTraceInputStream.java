@@ -0,0 +1,224 @@
+package openlink.mcp.server.jdbc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+
+/**
+ * Reads a gzip file of one or more members, like GZIPInputStream, but also
+ * reads members that were never finished because the server was killed.
+ *
+ * TraceRecorder sync flushes after every line, so an unfinished member ends
+ * with an empty stored block (00 00 ff ff), or right after its header,
+ * followed by the header of the member appended by the next server start,
+ * or by the end of the file. The lines of an unfinished member are kept up to that point and
+ * reading goes on with the next member. Other damage is reported as a
+ * ZipException.
+ */
+final class GzipTraceInputStream extends InputStream {
+
+    private static final byte[] SYNC_AND_HEADER = { 0, 0, (byte) 0xff, (byte) 0xff, 0x1f, (byte) 0x8b, 8 };
+
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final FileChannel ch;
+    private final byte[] buf = new byte[1 << 16];
+    private final Inflater inflater = new Inflater(true);
+    private final CRC32 crc = new CRC32();
+
+    // file offset of the next byte to inflate
+    private long pos;
+    // where a new member may start if the current one is unfinished, or -1
+    private long cut = -1;
+    // input from trial on is being inflated, an error means the member ended there
+    private long trial = -1;
+    private boolean inMember;
+    private boolean eof;
+    private int members;
+
+    GzipTraceInputStream(Path file) throws IOException
+    {
+        ch = FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if (len == 0)
+            return 0;
+        while (!eof) {
+            if (!inMember) {
+                if (!readHeader())
+                    eof = true;
+                continue;
+            }
+
+            int n;
+            try {
+                n = inflater.inflate(b, off, len);
+            } catch (DataFormatException e) {
+                if (trial < 0)
+                    throw new ZipException(e.getMessage());
+                // the member ended with the sync flush before trial
+                pos = trial;
+                inMember = false;
+                continue;
+            }
+            if (n > 0) {
+                trial = -1;
+                crc.update(b, off, n);
+                return n;
+            }
+
+            if (inflater.finished()) {
+                pos -= inflater.getRemaining();
+                readTrailer();
+            } else if (inflater.needsInput()) {
+                if (!fill())
+                    eof = true;
+            } else {
+                throw new ZipException("Unexpected gzip dictionary");
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        inflater.end();
+        ch.close();
+    }
+
+
+    /** Feeds the inflater, stopping at a possible cut. Returns false at the end of the file. */
+    private boolean fill() throws IOException
+    {
+        int n = read(ByteBuffer.wrap(buf), pos);
+        if (n <= 0)
+            return false;
+
+        trial = pos == cut ? pos : -1;
+        cut = -1;
+        int feed = n;
+        int i = indexOf(buf, n, SYNC_AND_HEADER);
+        if (i >= 0) {
+            feed = i + 4;
+            cut = pos + feed;
+        } else if (n == buf.length) {
+            // the end of buf may hold the start of a sync flush and header
+            feed = n - (SYNC_AND_HEADER.length - 1);
+        }
+        inflater.setInput(buf, 0, feed);
+        pos += feed;
+        return true;
+    }
+
+    private boolean readHeader() throws IOException
+    {
+        ByteBuffer h = ByteBuffer.allocate(10).order(ByteOrder.LITTLE_ENDIAN);
+        if (read(h, pos) < 10 || (h.get(0) & 0xff) != 0x1f || (h.get(1) & 0xff) != 0x8b || h.get(2) != 8) {
+            // like GZIPInputStream, trailing garbage after a member is ignored
+            if (members == 0)
+                throw new ZipException("Not in GZIP format");
+            return false;
+        }
+        int flags = h.get(3);
+        long p = pos + 10;
+        if ((flags & FEXTRA) != 0) {
+            ByteBuffer x = ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN);
+            read(x, p);
+            p += 2 + (x.getShort(0) & 0xffff);
+        }
+        if ((flags & FNAME) != 0)
+            p = skipString(p);
+        if ((flags & FCOMMENT) != 0)
+            p = skipString(p);
+        if ((flags & FHCRC) != 0)
+            p += 2;
+
+        // a member killed before its first flush is only a header
+        ByteBuffer next = ByteBuffer.allocate(3);
+        boolean empty = read(next, p) == 3 && (next.get(0) & 0xff) == 0x1f
+            && (next.get(1) & 0xff) == 0x8b && next.get(2) == 8;
+
+        pos = p;
+        cut = empty ? p : -1;
+        trial = -1;
+        inflater.reset();
+        crc.reset();
+        inMember = true;
+        members++;
+        return true;
+    }
+
+    private void readTrailer() throws IOException
+    {
+        ByteBuffer t = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        if (read(t, pos) < 8) {
+            eof = true;
+            return;
+        }
+        if ((t.getInt(0) & 0xffffffffL) != crc.getValue()
+            || (t.getInt(4) & 0xffffffffL) != (inflater.getBytesWritten() & 0xffffffffL))
+            throw new ZipException("Corrupt GZIP trailer");
+        pos += 8;
+        inMember = false;
+    }
+
+    private long skipString(long p) throws IOException
+    {
+        ByteBuffer c = ByteBuffer.allocate(1);
+        do {
+            c.clear();
+            if (ch.read(c, p++) < 1)
+                throw new ZipException("Truncated GZIP header");
+        } while (c.get(0) != 0);
+        return p;
+    }
+
+    /** Reads from position until dst is full or the file ends, returns the bytes read. */
+    private int read(ByteBuffer dst, long position) throws IOException
+    {
+        int total = 0;
+        while (dst.hasRemaining()) {
+            int n = ch.read(dst, position + total);
+            if (n < 0)
+                break;
+            total += n;
+        }
+        return total;
+    }
+
+    private static int indexOf(byte[] b, int len, byte[] pattern)
+    {
+        outer:
+        for (int i = 0; i + pattern.length <= len; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (b[i + j] != pattern[j])
+                    continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,478 @@
+package openlink.mcp.server.jdbc;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * In-process inner equi-join of two row streams.
+ *
+ * Both inputs are read alternately until one of them ends; the side that
+ * ended first is the smaller one and becomes the build side of a hash table
+ * made of primitive int arrays, the other side is streamed against it.
+ * If the memory budget runs out before either side ends, both sides are
+ * hash partitioned to spill files and every partition pair is joined again
+ * the same way, reading the spilled rows through memory-mapped buffers
+ * (grace hash join). A partition pair whose smaller side fits the budget is
+ * joined directly. One that cannot be split further, because it is
+ * dominated by a few keys or MAX_DEPTH is reached, is joined as a block
+ * nested loop: budget sized blocks of its smaller side are hashed in turn
+ * and the other side is rescanned for each block. Join keys are compared
+ * as strings, rows with a null key never match.
+ */
+class HashJoin {
+
+    interface RowSource {
+        /** Returns the next row, or null at the end. */
+        String[] next() throws Exception;
+    }
+
+    interface RowSink {
+        /** Receives a joined row, returns false to stop the join. */
+        boolean accept(String[] left, String[] right);
+    }
+
+    private static final int PARTITION_BITS = 4;
+    private static final int PARTITIONS = 1 << PARTITION_BITS;
+    private static final int MAX_DEPTH = 4;
+    private static final int MAP_WINDOW = 64 << 20;
+    // smaller budgets only multiply spill files and nested loop passes
+    static final long MIN_MEMORY_BUDGET = 1 << 20;
+
+    private final int[] leftKeys;
+    private final int[] rightKeys;
+    private final long memoryBudget;
+    private final Path spillDir;
+
+    int spilledPartitions;
+    long spilledBytes;
+    int nestedLoopPasses;
+
+    HashJoin(int[] leftKeys, int[] rightKeys, long memoryBudget, Path spillDir)
+    {
+        if (leftKeys.length == 0 || leftKeys.length != rightKeys.length)
+            throw new IllegalArgumentException("Left and right join keys must have the same, non zero, number of columns");
+        this.leftKeys = leftKeys;
+        this.rightKeys = rightKeys;
+        this.memoryBudget = Math.max(memoryBudget, MIN_MEMORY_BUDGET);
+        this.spillDir = spillDir;
+    }
+
+    /** Runs the join, returns false if the sink stopped it early. */
+    boolean run(RowSource left, RowSource right, RowSink sink) throws Exception
+    {
+        return join(left, right, sink, 0);
+    }
+
+
+    private boolean join(RowSource left, RowSource right, RowSink sink, int depth) throws Exception
+    {
+        List<String[]> lbuf = new ArrayList<>();
+        List<String[]> rbuf = new ArrayList<>();
+        long lbytes = 0, rbytes = 0;
+        boolean ldone = false, rdone = false;
+
+        // rows are read in pairs, so either side may become the table
+        while (!ldone && !rdone && lbytes + rbytes + tableBytes(lbuf.size()) <= memoryBudget) {
+            String[] row = left.next();
+            if (row == null) {
+                ldone = true;
+            } else {
+                lbuf.add(row);
+                lbytes += rowBytes(row);
+            }
+            row = right.next();
+            if (row == null) {
+                rdone = true;
+            } else {
+                rbuf.add(row);
+                rbytes += rowBytes(row);
+            }
+        }
+
+        if (ldone || rdone) {
+            boolean buildLeft = ldone && (!rdone || lbytes <= rbytes);
+            if (buildLeft)
+                return probe(new Table(lbuf, leftKeys), rbuf, right, rightKeys, true, sink);
+            else
+                return probe(new Table(rbuf, rightKeys), lbuf, left, leftKeys, false, sink);
+        }
+
+        Partitions lparts = new Partitions("l");
+        Partitions rparts = new Partitions("r");
+        try {
+            for (String[] row : lbuf)
+                lparts.add(row, leftKeys, depth);
+            lbuf = null;
+            for (String[] row : rbuf)
+                rparts.add(row, rightKeys, depth);
+            rbuf = null;
+
+            String[] row;
+            while ((row = left.next()) != null)
+                lparts.add(row, leftKeys, depth);
+            while ((row = right.next()) != null)
+                rparts.add(row, rightKeys, depth);
+            lparts.finish();
+            rparts.finish();
+
+            long total = lparts.total() + rparts.total();
+            for (int p = 0; p < PARTITIONS; p++) {
+                if (lparts.rows[p] == 0 || rparts.rows[p] == 0)
+                    continue;
+                long lmem = lparts.memory[p] + tableBytes(lparts.rows[p]);
+                long rmem = rparts.memory[p] + tableBytes(rparts.rows[p]);
+                // a partition holding most of its parent is made of a few keys
+                // that the next hash bits cannot split either
+                boolean split = depth + 1 < MAX_DEPTH && lmem + rmem <= total / 2;
+                boolean fits = Math.min(lmem, rmem) <= memoryBudget;
+
+                if (split && !fits) {
+                    try (MappedRowSource ls = new MappedRowSource(lparts.files[p]);
+                         MappedRowSource rs = new MappedRowSource(rparts.files[p])) {
+                        if (!join(ls, rs, sink, depth + 1))
+                            return false;
+                    }
+                } else {
+                    boolean buildLeft = lmem <= rmem;
+                    boolean more = buildLeft
+                        ? nestedLoop(lparts.files[p], leftKeys, rparts.files[p], rightKeys, true, sink)
+                        : nestedLoop(rparts.files[p], rightKeys, lparts.files[p], leftKeys, false, sink);
+                    if (!more)
+                        return false;
+                }
+            }
+            return true;
+        } finally {
+            lparts.delete();
+            rparts.delete();
+        }
+    }
+
+    /**
+     * Joins two spill files by hashing budget sized blocks of the build file
+     * and scanning the probe file once per block. A build file that fits the
+     * budget takes a single pass.
+     */
+    private boolean nestedLoop(Path buildFile, int[] buildKeys, Path probeFile, int[] probeKeys,
+                               boolean buildLeft, RowSink sink) throws Exception
+    {
+        try (MappedRowSource build = new MappedRowSource(buildFile)) {
+            String[] row = build.next();
+            while (row != null) {
+                List<String[]> block = new ArrayList<>();
+                long bytes = 0;
+                do {
+                    block.add(row);
+                    bytes += rowBytes(row);
+                    row = build.next();
+                } while (row != null && bytes + tableBytes(block.size()) < memoryBudget);
+
+                nestedLoopPasses++;
+                try (MappedRowSource rest = new MappedRowSource(probeFile)) {
+                    if (!probe(new Table(block, buildKeys), List.of(), rest, probeKeys, buildLeft, sink))
+                        return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean probe(Table table, List<String[]> buffered, RowSource rest, int[] keys,
+                          boolean buildLeft, RowSink sink) throws Exception
+    {
+        if (table.isEmpty())
+            return true;
+        for (String[] row : buffered) {
+            if (!table.probe(row, keys, buildLeft, sink))
+                return false;
+        }
+        String[] row;
+        while ((row = rest.next()) != null) {
+            if (!table.probe(row, keys, buildLeft, sink))
+                return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * Chained hash table over a row list; buckets and chains are int arrays
+     * indexing into the list, so there is no per-entry object.
+     */
+    private static final class Table {
+        private final List<String[]> rows;
+        private final int[] keys;
+        private final int[] heads;
+        private final int[] next;
+        private final int[] hashes;
+        private final int mask;
+        private int size;
+
+        Table(List<String[]> rows, int[] keys)
+        {
+            this.rows = rows;
+            this.keys = keys;
+            int n = rows.size();
+            int cap = (int) capacity(n);
+            heads = new int[cap];
+            Arrays.fill(heads, -1);
+            next = new int[n];
+            hashes = new int[n];
+            mask = cap - 1;
+
+            for (int i = 0; i < n; i++) {
+                String[] row = rows.get(i);
+                if (hasNullKey(row, keys))
+                    continue;
+                int h = hash(row, keys);
+                int b = bucket(h);
+                hashes[i] = h;
+                next[i] = heads[b];
+                heads[b] = i;
+                size++;
+            }
+        }
+
+        boolean isEmpty()
+        {
+            return size == 0;
+        }
+
+        boolean probe(String[] row, int[] rowKeys, boolean buildLeft, RowSink sink)
+        {
+            if (hasNullKey(row, rowKeys))
+                return true;
+            int h = hash(row, rowKeys);
+            for (int i = heads[bucket(h)]; i >= 0; i = next[i]) {
+                if (hashes[i] != h)
+                    continue;
+                String[] match = rows.get(i);
+                if (!keysEqual(match, keys, row, rowKeys))
+                    continue;
+                if (!(buildLeft ? sink.accept(match, row) : sink.accept(row, match)))
+                    return false;
+            }
+            return true;
+        }
+
+        private int bucket(int h)
+        {
+            // the high bits select spill partitions, so spread the low ones again
+            return mix(h ^ 0x9E3779B9) & mask;
+        }
+    }
+
+
+    /** One spill file per partition for one side of the join. */
+    private final class Partitions {
+        final Path[] files = new Path[PARTITIONS];
+        final long[] rows = new long[PARTITIONS];
+        // estimated heap size of each partition once read back, see rowBytes
+        final long[] memory = new long[PARTITIONS];
+        private final DataOutputStream[] out = new DataOutputStream[PARTITIONS];
+        private final String side;
+
+        Partitions(String side)
+        {
+            this.side = side;
+        }
+
+        void add(String[] row, int[] keys, int depth) throws IOException
+        {
+            if (hasNullKey(row, keys))
+                return;
+            int shift = 32 - PARTITION_BITS * (depth + 1);
+            int p = (hash(row, keys) >>> shift) & (PARTITIONS - 1);
+            if (out[p] == null) {
+                files[p] = Files.createTempFile(spillDir, "join-" + side + "-", ".part");
+                out[p] = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(files[p]), 1 << 16));
+                spilledPartitions++;
+            }
+
+            byte[][] cols = new byte[row.length][];
+            int len = 4;
+            for (int i = 0; i < row.length; i++) {
+                if (row[i] != null) {
+                    cols[i] = row[i].getBytes(StandardCharsets.UTF_8);
+                    len += cols[i].length;
+                }
+                len += 4;
+            }
+            DataOutputStream o = out[p];
+            o.writeInt(len);
+            o.writeInt(row.length);
+            for (byte[] c : cols) {
+                if (c == null) {
+                    o.writeInt(-1);
+                } else {
+                    o.writeInt(c.length);
+                    o.write(c);
+                }
+            }
+            rows[p]++;
+            memory[p] += rowBytes(row);
+            spilledBytes += 4 + len;
+        }
+
+        long total()
+        {
+            long n = 0;
+            for (long m : memory)
+                n += m;
+            return n;
+        }
+
+        void finish() throws IOException
+        {
+            for (int p = 0; p < PARTITIONS; p++) {
+                if (out[p] != null) {
+                    out[p].close();
+                    out[p] = null;
+                }
+            }
+        }
+
+        void delete()
+        {
+            for (int p = 0; p < PARTITIONS; p++) {
+                try {
+                    if (out[p] != null)
+                        out[p].close();
+                    if (files[p] != null)
+                        Files.deleteIfExists(files[p]);
+                } catch (IOException e) {
+                    // best effort, the file lives in the spill directory
+                }
+            }
+        }
+    }
+
+
+    /** Reads a spill file through a sliding memory-mapped window. */
+    private static final class MappedRowSource implements RowSource, AutoCloseable {
+        private final FileChannel ch;
+        private final long size;
+        private long pos;
+        private long bufStart;
+        private MappedByteBuffer buf;
+
+        MappedRowSource(Path file) throws IOException
+        {
+            ch = FileChannel.open(file, StandardOpenOption.READ);
+            size = ch.size();
+        }
+
+        @Override
+        public String[] next() throws IOException
+        {
+            if (pos >= size)
+                return null;
+            int len = window(4).getInt();
+            pos += 4;
+            ByteBuffer b = window(len);
+            String[] row = new String[b.getInt()];
+            for (int i = 0; i < row.length; i++) {
+                int n = b.getInt();
+                if (n >= 0) {
+                    byte[] bytes = new byte[n];
+                    b.get(bytes);
+                    row[i] = new String(bytes, StandardCharsets.UTF_8);
+                }
+            }
+            pos += len;
+            return row;
+        }
+
+        private ByteBuffer window(int n) throws IOException
+        {
+            if (buf == null || pos + n > bufStart + buf.capacity()) {
+                long len = Math.min(size - pos, Math.max(MAP_WINDOW, n));
+                buf = ch.map(FileChannel.MapMode.READ_ONLY, pos, len);
+                bufStart = pos;
+            }
+            buf.position((int) (pos - bufStart));
+            return buf;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            ch.close();
+        }
+    }
+
+
+    static boolean hasNullKey(String[] row, int[] keys)
+    {
+        for (int k : keys) {
+            if (row[k] == null)
+                return true;
+        }
+        return false;
+    }
+
+    static boolean keysEqual(String[] a, int[] akeys, String[] b, int[] bkeys)
+    {
+        for (int i = 0; i < akeys.length; i++) {
+            if (!a[akeys[i]].equals(b[bkeys[i]]))
+                return false;
+        }
+        return true;
+    }
+
+    static int hash(String[] row, int[] keys)
+    {
+        int h = 1;
+        for (int k : keys)
+            h = 31 * h + row[k].hashCode();
+        return mix(h);
+    }
+
+    private static int mix(int h)
+    {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /** Bucket count of a Table over n rows, between 2n and 4n. */
+    private static long capacity(long n)
+    {
+        return Long.highestOneBit(Math.max(2, n) * 2 - 1) << 1;
+    }
+
+    /**
+     * Heap size of a Table over n rows besides the rows themselves: the list
+     * slot, next and hash of each row, and the bucket heads.
+     */
+    static long tableBytes(long n)
+    {
+        return 12 * n + 4 * capacity(n);
+    }
+
+    /** Rough heap footprint of a buffered row. */
+    static long rowBytes(String[] row)
+    {
+        long n = 16 + 4L * row.length;
+        for (String s : row) {
+            if (s != null)
+                n += 40 + s.length();
+        }
+        return n;
+    }
+}
@@ -4,17 +4,18 @@ import java.util.List;
 import java.util.Map;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.PreparedStatement;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Callable;
 import java.util.stream.Collectors;
 
 import jakarta.inject.Inject;
@@ -31,13 +32,24 @@ import io.quarkiverse.mcp.server.TextContent;
 import io.quarkiverse.mcp.server.Tool;
 import io.quarkiverse.mcp.server.ToolArg;
 import io.quarkiverse.mcp.server.ToolCallException;
+import io.quarkus.logging.Log;
 
 
+@Traced
 public class MCPServer {
 
     @Inject
     ObjectMapper mapper;
 
+    @Inject
+    ConnectionHealth health;
+
+    @Inject
+    ConnectionRouter router;
+
+    @Inject
+    AsyncJobs jobs;
+
     @ConfigProperty(name = "jdbc.url")
     String jdbcUrl;
 
@@ -53,16 +65,27 @@ public class MCPServer {
     @ConfigProperty(name = "jdbc.api_key")
     Optional<String> API_KEY;
 
-    private Connection getConnection(String user, String password, String url) throws SQLException 
+    @ConfigProperty(name = "jdbc.join.memory_budget_mb")
+    Optional<Integer> JOIN_MEMORY_MB;
+
+    @ConfigProperty(name = "jdbc.join.spill_dir")
+    Optional<String> JOIN_SPILL_DIR;
+
+    private Connection getConnection(String user, String password, String url, boolean readOnly) throws SQLException 
     {
         if (user==null)
           user = jdbcUser.orElse(null);
         if (password==null)
           password = jdbcPassword.orElse(null);
-        if (url==null)
-          url = jdbcUrl;
 
-        return DriverManager.getConnection(url, user, password);
+        // url==null lets the router pick the primary or a replica
+        return router.connect(user, password, url, readOnly);
+    }
+
+    private ToolCallException toolError(String url, String msg, Exception e)
+    {
+        health.recordError(url != null ? url : router.lastRouted(), e);
+        return new ToolCallException(msg + e.getMessage(), e);
     }
 
     private boolean supportsCatalogs(DatabaseMetaData meta) throws SQLException
@@ -86,7 +109,7 @@ public class MCPServer {
     	@ToolArg(description = "JDBC URL", required = false) String url) 
     {
         //log.error("Listing schemas");
-        try (Connection conn = getConnection(user, password, url)) {
+        try (Connection conn = getConnection(user, password, url, true)) {
             DatabaseMetaData metaData = conn.getMetaData();
             boolean hasCats = supportsCatalogs(metaData);
             List<String> cats = new ArrayList<>();
@@ -105,7 +128,29 @@ public class MCPServer {
             }
             return mapper.writeValueAsString(cats);
         } catch (Exception e) {
-            throw new ToolCallException("Failed to get_schemas: " + e.getMessage(), e);
+            throw toolError(url, "Failed to get_schemas: ", e);
+        }
+    }
+
+
+    @Tool(description = "Return the health and circuit breaker state of the configured JDBC URLs and those used recently.")
+    String jdbc_connection_status(McpLog log)
+    {
+        try {
+            return mapper.writeValueAsString(health.status());
+        } catch (Exception e) {
+            throw new ToolCallException("Failed to connection_status: " + e.getMessage(), e);
+        }
+    }
+
+
+    @Tool(description = "Return read/write routing metrics: requests per primary and replica, their latency and outstanding requests.")
+    String jdbc_routing_status(McpLog log)
+    {
+        try {
+            return mapper.writeValueAsString(router.status());
+        } catch (Exception e) {
+            throw new ToolCallException("Failed to routing_status: " + e.getMessage(), e);
         }
     }
 
@@ -119,7 +164,7 @@ public class MCPServer {
     {
         //log.debug("Listing tables");
         String cat = schema.orElse("%");
-        try (Connection conn = getConnection(user, password, url)) {
+        try (Connection conn = getConnection(user, password, url, true)) {
             DatabaseMetaData metaData = conn.getMetaData();
             ResultSet rs;
             boolean hasCats = supportsCatalogs(metaData);
@@ -139,7 +184,7 @@ public class MCPServer {
             }
             return mapper.writeValueAsString(tables);
         } catch (Exception e) {
-            throw new ToolCallException("Failed to get_tables: " + e.getMessage(), e);
+            throw toolError(url, "Failed to get_tables: ", e);
         }
     }
 
@@ -156,7 +201,7 @@ public class MCPServer {
         String cat = schema.orElse("%");
         Map<String, Object> tableDefinition = new HashMap<>();
 
-        try (Connection conn = getConnection(user, password, url)) {
+        try (Connection conn = getConnection(user, password, url, true)) {
             Map<String, Object> tableInfo = hasTable(conn, cat, table);
             if ((Boolean) tableInfo.get("exists")) {
                 tableDefinition = getTableInfo(conn,
@@ -166,7 +211,7 @@ public class MCPServer {
             }
             return mapper.writeValueAsString(tableDefinition);
         } catch (Exception e) {
-            throw new ToolCallException("Failed to describe_table: " + e.getMessage(), e);
+            throw toolError(url, "Failed to describe_table: ", e);
         }
     }
 
@@ -312,7 +357,7 @@ public class MCPServer {
         String cat = schema.orElse("%");
         Map<String, Object> tableDefinition = new HashMap<>();
 
-        try (Connection conn = getConnection(user, password, url)) {
+        try (Connection conn = getConnection(user, password, url, true)) {
             DatabaseMetaData metaData = conn.getMetaData();
             boolean hasCats = supportsCatalogs(metaData);
             ResultSet rs;
@@ -335,7 +380,7 @@ public class MCPServer {
             }
             return mapper.writeValueAsString(tables);
         } catch (Exception e) {
-            throw new ToolCallException("Failed to filter table names: " + e.getMessage(), e);
+            throw toolError(url, "Failed to filter table names: ", e);
         }
     }
 
@@ -350,7 +395,7 @@ public class MCPServer {
     {
         int maxRowsValue = max_rows.orElse(100);
 
-        try (Connection conn = getConnection(user, password, url)) {
+        try (Connection conn = getConnection(user, password, url, ConnectionRouter.isReadOnly(query))) {
             Statement stmt = conn.createStatement();
             
             ResultSet rs = stmt.executeQuery(query);
@@ -382,7 +427,7 @@ public class MCPServer {
             }
             return mapper.writeValueAsString(data);
         } catch (Exception e) {
-            throw new ToolCallException("Failed to execute_query: " + e.getMessage(), e);
+            throw toolError(url, "Failed to execute_query: ", e);
         }
     }
 
@@ -397,7 +442,7 @@ public class MCPServer {
     {
         int maxRowsValue = max_rows.orElse(100);
 
-        try (Connection conn = getConnection(user, password, url)) {
+        try (Connection conn = getConnection(user, password, url, ConnectionRouter.isReadOnly(query))) {
             Statement stmt = conn.createStatement();
             
             ResultSet rs = stmt.executeQuery(query);
@@ -439,7 +484,7 @@ public class MCPServer {
             
             return mdTable.toString();
         } catch (Exception e) {
-            throw new ToolCallException("Failed to execute_query_md: " + e.getMessage(), e);
+            throw toolError(url, "Failed to execute_query_md: ", e);
         }
     }
 
@@ -451,7 +496,7 @@ public class MCPServer {
     	@ToolArg(description = "Password", required = false) String password,
     	@ToolArg(description = "JDBC URL", required = false) String url) 
     {
-        try (Connection conn = getConnection(user, password, url)) {
+        try (Connection conn = getConnection(user, password, url, ConnectionRouter.isReadOnly(query))) {
             Statement stmt = conn.createStatement();
             
             ResultSet rs = stmt.executeQuery(query);
@@ -481,11 +526,146 @@ public class MCPServer {
             }
             return mapper.writeValueAsString(data);
         } catch (Exception e) {
-            throw new ToolCallException("Failed to query_database: " + e.getMessage(), e);
+            throw toolError(url, "Failed to query_database: ", e);
         }
     }
 
 
+    @Tool(description = "Join the results of two SQL queries, which may run on different databases, on the given key columns. "
+                +"The join runs inside the server and only the joined rows are returned, in JSONL format. "
+                +"Keys are compared as strings; right columns whose names clash with left ones are prefixed with 'right.'.")
+    String jdbc_join_queries(McpLog log,
+    	@ToolArg(description = "Left query", required = true) String left_query,
+    	@ToolArg(description = "Right query", required = true) String right_query,
+    	@ToolArg(description = "Comma separated join key columns of the left query", required = true) String left_keys,
+    	@ToolArg(description = "Comma separated join key columns of the right query, defaults to left_keys", required = false) Optional<String> right_keys,
+    	@ToolArg(description = "Max Rows", required = false) Optional<Integer> max_rows,
+    	@ToolArg(description = "Username", required = false) String user,
+    	@ToolArg(description = "Password", required = false) String password,
+    	@ToolArg(description = "JDBC URL", required = false) String url,
+    	@ToolArg(description = "Right Username, defaults to user", required = false) String right_user,
+    	@ToolArg(description = "Right Password, defaults to password", required = false) String right_password,
+    	@ToolArg(description = "Right JDBC URL, defaults to url", required = false) String right_url)
+    {
+        int maxRowsValue = max_rows.orElse(100);
+        int max_long_data = MAX_LONG_DATA.orElse(100);
+        long budget = JOIN_MEMORY_MB.orElse(64) * 1024L * 1024L;
+        Path spillDir = Path.of(JOIN_SPILL_DIR.orElse(System.getProperty("java.io.tmpdir")));
+
+        if (right_user == null)
+            right_user = user;
+        if (right_password == null)
+            right_password = password;
+        if (right_url == null)
+            right_url = url;
+
+        // errors are charged to the URL of the side that was in use, failures
+        // to connect are already counted by ConnectionHealth
+        String[] errorUrl = new String[1];
+        try (Connection lconn = getConnection(user, password, url, ConnectionRouter.isReadOnly(left_query))) {
+            String lurl = router.lastRouted();
+            try (Connection rconn = getConnection(right_user, right_password, right_url, ConnectionRouter.isReadOnly(right_query))) {
+                String rurl = router.lastRouted();
+
+                errorUrl[0] = lurl;
+                Statement lstmt = lconn.createStatement();
+                lstmt.setFetchSize(1000);
+                ResultSet lrs = lstmt.executeQuery(left_query);
+                String[] lcols = columnNames(lrs.getMetaData());
+
+                errorUrl[0] = rurl;
+                Statement rstmt = rconn.createStatement();
+                rstmt.setFetchSize(1000);
+                ResultSet rrs = rstmt.executeQuery(right_query);
+                String[] rcols = columnNames(rrs.getMetaData());
+
+                errorUrl[0] = null;
+                int[] lkeys = keyColumns(lcols, left_keys);
+                int[] rkeys = keyColumns(rcols, right_keys.orElse(left_keys));
+
+                String[] rnames = new String[rcols.length];
+                for (int i = 0; i < rcols.length; i++)
+                    rnames[i] = List.of(lcols).contains(rcols[i]) ? "right." + rcols[i] : rcols[i];
+
+                List<Map<String, String>> data = new ArrayList<>();
+                HashJoin join = new HashJoin(lkeys, rkeys, budget, spillDir);
+                join.run(() -> {
+                    errorUrl[0] = lurl;
+                    String[] row = nextRow(lrs, lcols.length);
+                    errorUrl[0] = null;
+                    return row;
+                }, () -> {
+                    errorUrl[0] = rurl;
+                    String[] row = nextRow(rrs, rcols.length);
+                    errorUrl[0] = null;
+                    return row;
+                }, (l, r) -> {
+                    Map<String, String> row = new HashMap<>();
+                    for (int i = 0; i < l.length; i++)
+                        row.put(lcols[i], truncate(l[i], max_long_data));
+                    for (int i = 0; i < r.length; i++)
+                        row.put(rnames[i], truncate(r[i], max_long_data));
+                    data.add(row);
+                    return data.size() < maxRowsValue;
+                });
+                if (join.spilledPartitions > 0)
+                    Log.debugf("join_queries spilled %d partitions, %d bytes, %d nested loop passes",
+                        join.spilledPartitions, join.spilledBytes, join.nestedLoopPasses);
+                return mapper.writeValueAsString(data);
+            }
+        } catch (Exception e) {
+            // e.g. a bad key column or a spill file error, neither database is to blame
+            if (errorUrl[0] == null)
+                throw new ToolCallException("Failed to join_queries: " + e.getMessage(), e);
+            throw toolError(errorUrl[0], "Failed to join_queries: ", e);
+        }
+    }
+
+    private static String[] columnNames(ResultSetMetaData metaData) throws SQLException
+    {
+        String[] names = new String[metaData.getColumnCount()];
+        for (int i = 0; i < names.length; i++)
+            names[i] = metaData.getColumnName(i + 1);
+        return names;
+    }
+
+    private static int[] keyColumns(String[] columns, String keys)
+    {
+        String[] names = keys.split(",");
+        int[] idx = new int[names.length];
+        for (int k = 0; k < names.length; k++) {
+            String name = names[k].trim();
+            idx[k] = -1;
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i].equalsIgnoreCase(name)) {
+                    idx[k] = i;
+                    break;
+                }
+            }
+            if (idx[k] < 0)
+                throw new IllegalArgumentException("Join key column '" + name + "' not found in " + List.of(columns));
+        }
+        return idx;
+    }
+
+    private static String[] nextRow(ResultSet rs, int columnCount) throws SQLException
+    {
+        if (!rs.next())
+            return null;
+        String[] row = new String[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            Object value = rs.getObject(i + 1);
+            row[i] = value != null ? value.toString() : null;
+        }
+        return row;
+    }
+
+    private static String truncate(String value, int max_long_data)
+    {
+        return (value != null && value.length() > max_long_data) ? value.substring(0, max_long_data) : value;
+    }
+
+
     @Tool(description = "Execute a SPASQL query and return results.")
     String jdbc_spasql_query(McpLog log,
     	@ToolArg(description = "Query", required = true) String query,
@@ -498,7 +678,7 @@ public class MCPServer {
         int maxRowsValue = max_rows.orElse(20);
         int timeoutValue = timeout.orElse(300000);
 
-        try (Connection conn = getConnection(user, password, url)) {
+        try (Connection conn = getConnection(user, password, url, false)) {
             String cmd = "select Demo.demo.execute_spasql_query(?,?,?) as result";
 
             PreparedStatement stmt = conn.prepareStatement(cmd);
@@ -510,7 +690,7 @@ public class MCPServer {
             rs.next();
             return rs.getString(1);
         } catch (Exception e) {
-            throw new ToolCallException("Failed to spasql_query: " + e.getMessage(), e);
+            throw toolError(url, "Failed to spasql_query: ", e);
         }
     }
 
@@ -519,25 +699,13 @@ public class MCPServer {
     String jdbc_virtuoso_support_ai(McpLog log,
     	@ToolArg(description = "Prompt", required = true) String prompt,
     	@ToolArg(description = "API Key", required = false) Optional<String> api_key,
+    	@ToolArg(description = "Return a job id right away and run in the background, poll it with jdbc_job_status", required = false) Optional<Boolean> async,
     	@ToolArg(description = "Username", required = false) String user,
     	@ToolArg(description = "Password", required = false) String password,
     	@ToolArg(description = "JDBC URL", required = false) String url) 
     {
-        String _api_key = api_key.orElse( API_KEY.orElse("sk-xxx"));
-
-        try (Connection conn = getConnection(user, password, url)) {
-            String cmd = "select DEMO.DBA.OAI_VIRTUOSO_SUPPORT_AI(?, ?) as result";
-
-            PreparedStatement stmt = conn.prepareStatement(cmd);
-            stmt.setString(1, prompt);
-            stmt.setString(2, _api_key);
-
-            ResultSet rs = stmt.executeQuery();
-            rs.next();
-            return rs.getString(1);
-        } catch (Exception e) {
-            throw new ToolCallException("Failed to virtuoso_support_ai: " + e.getMessage(), e);
-        }
+        return _ai_func("virtuoso_support_ai", "DEMO.DBA.OAI_VIRTUOSO_SUPPORT_AI",
+                        prompt, api_key, async.orElse(false), user, password, url);
     }
 
 
@@ -545,24 +713,75 @@ public class MCPServer {
     String jdbc_sparql_func(McpLog log,
     	@ToolArg(description = "Prompt", required = true) String prompt,
     	@ToolArg(description = "API Key", required = false) Optional<String> api_key,
+    	@ToolArg(description = "Return a job id right away and run in the background, poll it with jdbc_job_status", required = false) Optional<Boolean> async,
     	@ToolArg(description = "Username", required = false) String user,
     	@ToolArg(description = "Password", required = false) String password,
     	@ToolArg(description = "JDBC URL", required = false) String url) 
     {
-        String _api_key = api_key.orElse( API_KEY.orElse("sk-xxx"));
+        return _ai_func("sparql_func", "DEMO.DBA.OAI_SPARQL_FUNC",
+                        prompt, api_key, async.orElse(false), user, password, url);
+    }
 
-        try (Connection conn = getConnection(user, password, url)) {
-            String cmd = "select DEMO.DBA.OAI_SPARQL_FUNC(?, ?) as result";
 
-            PreparedStatement stmt = conn.prepareStatement(cmd);
-            stmt.setString(1, prompt);
-            stmt.setString(2, _api_key);
+    @Tool(description = "Return the status of a job started with async=true, and its result once done. "
+                +"Waits up to wait_ms for the job to finish.")
+    String jdbc_job_status(McpLog log,
+    	@ToolArg(description = "Job ID", required = true) String job_id,
+    	@ToolArg(description = "Max milliseconds to wait for the job to finish, defaults to 0", required = false) Optional<Integer> wait_ms)
+    {
+        try {
+            Map<String, Object> status = jobs.status(job_id, Math.min(wait_ms.orElse(0), 300000));
+            if (status == null)
+                throw new ToolCallException("Unknown job: " + job_id);
+            status.put("stats", jobs.stats());
+            return mapper.writeValueAsString(status);
+        } catch (ToolCallException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ToolCallException("Failed to job_status: " + e.getMessage(), e);
+        }
+    }
 
-            ResultSet rs = stmt.executeQuery();
-            rs.next();
-            return rs.getString(1);
+
+    /**
+     * Calls one of the DEMO.DBA.OAI_* procedures. Identical calls in flight
+     * share one execution and recent results are cached, see AsyncJobs.
+     */
+    String _ai_func(String name, String proc, String prompt, Optional<String> api_key, boolean async,
+    	String user, String password, String url)
+    {
+        String _api_key = api_key.orElse( API_KEY.orElse("sk-xxx"));
+        String _user = user != null ? user : jdbcUser.orElse(null);
+        String _password = password != null ? password : jdbcPassword.orElse(null);
+
+        Callable<String> call = () -> {
+            try (Connection conn = getConnection(user, password, url, false)) {
+                String cmd = "select " + proc + "(?, ?) as result";
+
+                PreparedStatement stmt = conn.prepareStatement(cmd);
+                stmt.setString(1, prompt);
+                stmt.setString(2, _api_key);
+
+                ResultSet rs = stmt.executeQuery();
+                rs.next();
+                return rs.getString(1);
+            } catch (SQLException e) {
+                health.recordError(url != null ? url : router.lastRouted(), e);
+                throw e;
+            }
+        };
+
+        try {
+            if (async) {
+                AsyncJobs.Job job = jobs.start(name, call, proc, url, _user, _password, prompt, _api_key);
+                Map<String, Object> res = new HashMap<>();
+                res.put("job_id", job.id);
+                res.put("status", job.result.isDone() ? "done" : "running");
+                return mapper.writeValueAsString(res);
+            }
+            return jobs.call(call, proc, url, _user, _password, prompt, _api_key);
         } catch (Exception e) {
-            throw new ToolCallException("Failed to sparql_func: " + e.getMessage(), e);
+            throw new ToolCallException("Failed to " + name + ": " + e.getMessage(), e);
         }
     }
 
@@ -571,7 +790,7 @@ public class MCPServer {
     	String query, String graph,
     	String user, String password, String url) 
     {
-        try (Connection conn = getConnection(user, password, url)) {
+        try (Connection conn = getConnection(user, password, url, true)) {
             PreparedStatement stmt = conn.prepareStatement(query);
             if (graph != null && !graph.isEmpty()) {
                 stmt.setString(1, graph);
@@ -603,7 +822,7 @@ public class MCPServer {
             }
             return mapper.writeValueAsString(data);
         } catch (Exception e) {
-            throw new ToolCallException("Failed to query_database: " + e.getMessage(), e);
+            throw toolError(url, "Failed to query_database: ", e);
         }
     }
 
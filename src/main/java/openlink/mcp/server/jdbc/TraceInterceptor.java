@@ -0,0 +1,37 @@
+package openlink.mcp.server.jdbc;
+
+import jakarta.annotation.Priority;
+import jakarta.inject.Inject;
+import jakarta.interceptor.AroundInvoke;
+import jakarta.interceptor.Interceptor;
+import jakarta.interceptor.InvocationContext;
+
+import io.quarkiverse.mcp.server.Tool;
+
+
+@Traced
+@Interceptor
+@Priority(Interceptor.Priority.APPLICATION)
+public class TraceInterceptor {
+
+    @Inject
+    TraceRecorder recorder;
+
+    @AroundInvoke
+    Object trace(InvocationContext ctx) throws Exception
+    {
+        if (!recorder.isEnabled() || !ctx.getMethod().isAnnotationPresent(Tool.class))
+            return ctx.proceed();
+
+        long start = System.nanoTime();
+        Object result = null;
+        boolean ok = false;
+        try {
+            result = ctx.proceed();
+            ok = true;
+            return result;
+        } finally {
+            recorder.record(ctx.getMethod(), ctx.getParameters(), result, start, System.nanoTime() - start, ok);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package openlink.mcp.server.jdbc;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.quarkiverse.mcp.server.McpLog;
+import io.quarkus.logging.Log;
+
+
+/**
+ * Writes tool calls to the trace file set by jdbc.trace.file. Each server
+ * start appends a {"session": epoch ms} line, followed by one JSON line per
+ * call as it completes: t (start in ms since the session line), tool, args,
+ * us (duration in microseconds) and ok. A file name ending in .gz is gzip
+ * compressed, each server start appends a gzip member that is sync flushed
+ * after every line, so the trace of a killed server stays readable.
+ * Connection arguments and API keys are never written, replay supplies its
+ * own connection. Calls made with async=true also record the job id they
+ * returned, so replay can point jdbc_job_status calls at the jobs it starts.
+ */
+@ApplicationScoped
+public class TraceRecorder {
+
+    /** Set on threads whose calls must not be recorded, e.g. trace replay. */
+    static final ThreadLocal<Boolean> SUPPRESSED = ThreadLocal.withInitial(() -> false);
+
+    static final Set<String> NOT_RECORDED =
+        Set.of("user", "password", "url", "right_user", "right_password", "right_url", "api_key");
+
+    @Inject
+    ObjectMapper mapper;
+
+    @ConfigProperty(name = "jdbc.trace.file")
+    Optional<String> TRACE_FILE;
+
+    private Writer out;
+    private long origin;
+    private boolean failed;
+
+    @PostConstruct
+    synchronized void init()
+    {
+        // opened before the first intercepted call starts, so t is never negative
+        origin = System.nanoTime();
+        if (TRACE_FILE.isEmpty())
+            return;
+        try {
+            out = open(Path.of(TRACE_FILE.get()));
+            out.write(mapper.writeValueAsString(Map.of("session", System.currentTimeMillis())));
+            out.write('\n');
+            out.flush();
+        } catch (IOException e) {
+            Log.warn("Disabling trace recording", e);
+            failed = true;
+        }
+    }
+
+    boolean isEnabled()
+    {
+        return TRACE_FILE.isPresent() && !failed && !SUPPRESSED.get();
+    }
+
+    synchronized void record(Method method, Object[] params, Object result, long startNanos, long durationNanos, boolean ok)
+    {
+        if (failed || out == null)
+            return;
+        try {
+            Map<String, Object> args = new LinkedHashMap<>();
+            Parameter[] names = method.getParameters();
+            for (int i = 0; i < names.length; i++) {
+                Object value = params[i];
+                if (value instanceof Optional)
+                    value = ((Optional<?>) value).orElse(null);
+                if (value == null || value instanceof McpLog || NOT_RECORDED.contains(names[i].getName()))
+                    continue;
+                args.put(names[i].getName(), value);
+            }
+
+            Map<String, Object> event = new LinkedHashMap<>();
+            event.put("t", Math.max(0, startNanos - origin) / 1000000);
+            event.put("tool", method.getName());
+            event.put("args", args);
+            event.put("us", durationNanos / 1000);
+            event.put("ok", ok);
+            if (ok && Boolean.TRUE.equals(args.get("async")) && result instanceof String) {
+                String job = jobId(mapper, (String) result);
+                if (job != null)
+                    event.put("job", job);
+            }
+            out.write(mapper.writeValueAsString(event));
+            out.write('\n');
+            out.flush();
+        } catch (IOException e) {
+            Log.warn("Disabling trace recording", e);
+            failed = true;
+        }
+    }
+
+    @PreDestroy
+    synchronized void close()
+    {
+        try {
+            if (out != null)
+                out.close();
+        } catch (IOException e) {
+            // nothing left to do
+        }
+        out = null;
+    }
+
+
+    private static Writer open(Path file) throws IOException
+    {
+        OutputStream os = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (isGzip(file))
+            os = new GZIPOutputStream(os, 1 << 16, true);
+        return new OutputStreamWriter(os, StandardCharsets.UTF_8);
+    }
+
+    /** Returns the job_id of a tool result, or null if it has none. */
+    static String jobId(ObjectMapper mapper, String result)
+    {
+        try {
+            Object id = mapper.readValue(result, Map.class).get("job_id");
+            return id instanceof String ? (String) id : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    static BufferedReader reader(Path file) throws IOException
+    {
+        InputStream is = isGzip(file) ? new GzipTraceInputStream(file) : Files.newInputStream(file);
+        return new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+    }
+
+    private static boolean isGzip(Path file)
+    {
+        return file.getFileName().toString().endsWith(".gz");
+    }
+}
@@ -0,0 +1,332 @@
+package openlink.mcp.server.jdbc;
+
+import java.io.BufferedReader;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.ParameterizedType;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import jakarta.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.quarkiverse.mcp.server.McpLog;
+import io.quarkiverse.mcp.server.Tool;
+import io.quarkiverse.mcp.server.ToolArg;
+import io.quarkiverse.mcp.server.ToolCallException;
+
+
+/**
+ * Load generator that replays a trace written by TraceRecorder against
+ * MCPServer, in-process, and reports latency percentiles and throughput
+ * per tool. Disabled unless jdbc.trace.replay_enabled is true, as it reads
+ * server side files and puts load on the database.
+ *
+ * jdbc_job_status calls poll the job started by the replayed async call that
+ * recorded their job id; calls polling a job that was not started in the
+ * trace are skipped.
+ */
+public class TraceReplay {
+
+    private static final int MAX_CONCURRENCY = 64;
+
+    @ConfigProperty(name = "jdbc.trace.replay_enabled")
+    Optional<Boolean> REPLAY_ENABLED;
+
+
+    @Inject
+    ObjectMapper mapper;
+
+    @Inject
+    MCPServer server;
+
+    static class Call {
+        final long t;
+        final Method method;
+        final Object[] args;
+        // the recorded id of the job this call started, or of the job it polls
+        final String startsJob;
+        final String pollsJob;
+
+        Call(long t, Method method, Object[] args, String startsJob, String pollsJob)
+        {
+            this.t = t;
+            this.method = method;
+            this.args = args;
+            this.startsJob = startsJob;
+            this.pollsJob = pollsJob;
+        }
+    }
+
+    private static class Stats {
+        final List<Long> latencies = new ArrayList<>();
+        int errors;
+    }
+
+
+    @Tool(description = "Replay a recorded tool call trace against this server and report latency percentiles and throughput per tool. "
+                +"Connection arguments in the trace are replaced by the ones given here.")
+    String jdbc_replay_trace(McpLog log,
+    	@ToolArg(description = "Trace file", required = true) String file,
+    	@ToolArg(description = "Number of concurrent callers, defaults to 4, at most 64", required = false) Optional<Integer> concurrency,
+    	@ToolArg(description = "Speed-up of the recorded call timing, 0 replays as fast as possible, defaults to 1", required = false) Optional<Double> speedup,
+    	@ToolArg(description = "Username", required = false) String user,
+    	@ToolArg(description = "Password", required = false) String password,
+    	@ToolArg(description = "JDBC URL", required = false) String url)
+    {
+        if (!REPLAY_ENABLED.orElse(false))
+            throw new ToolCallException("jdbc_replay_trace is disabled, set jdbc.trace.replay_enabled=true to enable it");
+
+        int threads = Math.max(1, Math.min(concurrency.orElse(4), MAX_CONCURRENCY));
+        double speed = speedup.orElse(1.0);
+
+        try {
+            List<Call> calls = load(Path.of(file), user, password, url);
+            // recorded job id -> id of the job started by the replayed call
+            Map<String, CompletableFuture<String>> jobIds = new HashMap<>();
+            for (Call call : calls) {
+                if (call.startsJob != null)
+                    jobIds.put(call.startsJob, new CompletableFuture<>());
+            }
+            int loaded = calls.size();
+            calls.removeIf(c -> c.pollsJob != null && !jobIds.containsKey(c.pollsJob));
+            int skipped = loaded - calls.size();
+
+            Map<String, Stats> stats = new TreeMap<>();
+            ExecutorService pool = Executors.newFixedThreadPool(threads, r -> new Thread(() -> {
+                TraceRecorder.SUPPRESSED.set(true);
+                r.run();
+            }, "jdbc-replay"));
+
+            long start = System.nanoTime();
+            try {
+                for (Call call : calls) {
+                    long scheduled = speed > 0 ? start + (long) (call.t * 1000000 / speed) : 0;
+                    if (scheduled > 0) {
+                        long wait;
+                        while ((wait = scheduled - System.nanoTime()) > 0)
+                            LockSupport.parkNanos(wait);
+                    }
+                    pool.execute(() -> {
+                        // measure from the scheduled time so queueing behind busy callers counts
+                        long begin = scheduled > 0 ? scheduled : System.nanoTime();
+                        boolean ok = invoke(call, jobIds);
+                        long elapsed = System.nanoTime() - begin;
+                        synchronized (stats) {
+                            Stats s = stats.computeIfAbsent(call.method.getName(), k -> new Stats());
+                            s.latencies.add(elapsed);
+                            if (!ok)
+                                s.errors++;
+                        }
+                    });
+                }
+            } finally {
+                pool.shutdown();
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            }
+            double wallSec = (System.nanoTime() - start) / 1e9;
+
+            return mapper.writeValueAsString(report(stats, calls.size(), skipped, wallSec, threads, speed));
+        } catch (Exception e) {
+            throw new ToolCallException("Failed to replay_trace: " + e.getMessage(), e);
+        }
+    }
+
+
+    List<Call> load(Path file, String user, String password, String url) throws Exception
+    {
+        Map<String, Method> tools = new HashMap<>();
+        for (Method m : MCPServer.class.getDeclaredMethods()) {
+            if (m.isAnnotationPresent(Tool.class))
+                tools.put(m.getName(), m);
+        }
+
+        Map<String, Object> connection = new HashMap<>();
+        connection.put("user", user);
+        connection.put("password", password);
+        connection.put("url", url);
+
+        List<List<Call>> sessions = new ArrayList<>();
+        List<Call> session = null;
+        int lineNo = 0;
+        try (BufferedReader in = TraceRecorder.reader(file)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                if (line.isBlank())
+                    continue;
+                // errors name the line only, never its content
+                Map<String, Object> event;
+                try {
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object> parsed = mapper.readValue(line, Map.class);
+                    event = parsed;
+                } catch (Exception e) {
+                    throw new IllegalArgumentException("Invalid trace line " + lineNo);
+                }
+                if (session == null || event.containsKey("session")) {
+                    session = new ArrayList<>();
+                    sessions.add(session);
+                }
+                if (event.containsKey("session"))
+                    continue;
+
+                Method m = event.get("tool") instanceof String ? tools.get((String) event.get("tool")) : null;
+                if (m == null || !(event.get("t") instanceof Number) || !(event.get("args") instanceof Map))
+                    throw new IllegalArgumentException("Invalid trace line " + lineNo);
+
+                @SuppressWarnings("unchecked")
+                Map<String, Object> args = new HashMap<>((Map<String, Object>) event.get("args"));
+                args.keySet().removeAll(TraceRecorder.NOT_RECORDED);
+                args.putAll(connection);
+
+                String startsJob = event.get("job") instanceof String ? (String) event.get("job") : null;
+                String pollsJob = args.get("job_id") instanceof String ? (String) args.get("job_id") : null;
+                session.add(new Call(((Number) event.get("t")).longValue(), m, arguments(m, args), startsJob, pollsJob));
+            }
+        }
+        return timeline(sessions);
+    }
+
+    /**
+     * Lines are written as calls complete, so within a session they are sorted
+     * back into start order. Sessions, one per recorder start, are replayed
+     * back to back.
+     */
+    static List<Call> timeline(List<List<Call>> sessions)
+    {
+        List<Call> calls = new ArrayList<>();
+        long base = 0;
+        for (List<Call> session : sessions) {
+            session.sort(Comparator.comparingLong(c -> c.t));
+            long end = base;
+            for (Call c : session) {
+                calls.add(new Call(base + c.t, c.method, c.args, c.startsJob, c.pollsJob));
+                end = base + c.t;
+            }
+            base = end;
+        }
+        return calls;
+    }
+
+    static Object[] arguments(Method m, Map<String, Object> args)
+    {
+        Parameter[] params = m.getParameters();
+        Object[] values = new Object[params.length];
+        for (int i = 0; i < params.length; i++) {
+            Parameter p = params[i];
+            Object v = args.get(p.getName());
+            if (p.getType() == Optional.class) {
+                Class<?> type = (Class<?>) ((ParameterizedType) p.getParameterizedType()).getActualTypeArguments()[0];
+                values[i] = Optional.ofNullable(convert(v, type));
+            } else if (p.getType() != McpLog.class) {
+                values[i] = convert(v, p.getType());
+            }
+        }
+        return values;
+    }
+
+    static Object convert(Object v, Class<?> type)
+    {
+        if (v == null || type.isInstance(v))
+            return v;
+        if (type == Integer.class)
+            return ((Number) v).intValue();
+        if (type == Long.class)
+            return ((Number) v).longValue();
+        if (type == Double.class)
+            return ((Number) v).doubleValue();
+        if (type == String.class)
+            return v.toString();
+        throw new IllegalArgumentException("Cannot convert " + v + " to " + type.getSimpleName());
+    }
+
+    private boolean invoke(Call call, Map<String, CompletableFuture<String>> jobIds)
+    {
+        try {
+            Object[] args = call.args;
+            if (call.pollsJob != null) {
+                // started by an earlier call, which is running or ahead in the queue
+                String id = jobIds.get(call.pollsJob).get();
+                if (id == null)
+                    return false;
+                args = args.clone();
+                Parameter[] params = call.method.getParameters();
+                for (int i = 0; i < params.length; i++) {
+                    if (params[i].getName().equals("job_id"))
+                        args[i] = id;
+                }
+            }
+            Object result = call.method.invoke(server, args);
+            if (call.startsJob != null)
+                jobIds.get(call.startsJob).complete(result instanceof String ? TraceRecorder.jobId(mapper, (String) result) : null);
+            return true;
+        } catch (Exception e) {
+            if (call.startsJob != null)
+                jobIds.get(call.startsJob).complete(null);
+            return false;
+        }
+    }
+
+
+    private static Map<String, Object> report(Map<String, Stats> stats, int calls, int skipped, double wallSec, int threads, double speed)
+    {
+        Map<String, Object> tools = new LinkedHashMap<>();
+        int errors = 0;
+        for (Map.Entry<String, Stats> e : stats.entrySet()) {
+            Stats s = e.getValue();
+            long[] lat = s.latencies.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(lat);
+            Map<String, Object> r = new LinkedHashMap<>();
+            r.put("calls", lat.length);
+            r.put("errors", s.errors);
+            r.put("throughput_per_s", round(lat.length / wallSec));
+            r.put("p50_ms", percentileMs(lat, 50));
+            r.put("p90_ms", percentileMs(lat, 90));
+            r.put("p99_ms", percentileMs(lat, 99));
+            r.put("max_ms", percentileMs(lat, 100));
+            tools.put(e.getKey(), r);
+            errors += s.errors;
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("calls", calls);
+        report.put("errors", errors);
+        report.put("skipped", skipped);
+        report.put("concurrency", threads);
+        report.put("speedup", speed);
+        report.put("wall_s", round(wallSec));
+        report.put("throughput_per_s", round(calls / wallSec));
+        report.put("tools", tools);
+        return report;
+    }
+
+    static double percentileMs(long[] sorted, int pct)
+    {
+        if (sorted.length == 0)
+            return 0;
+        int idx = (int) Math.ceil(pct / 100.0 * sorted.length) - 1;
+        return round(sorted[Math.max(0, Math.min(idx, sorted.length - 1))] / 1e6);
+    }
+
+    private static double round(double v)
+    {
+        return Math.round(v * 100) / 100.0;
+    }
+}
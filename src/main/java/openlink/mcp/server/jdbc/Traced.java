@@ -0,0 +1,19 @@
+package openlink.mcp.server.jdbc;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import jakarta.interceptor.InterceptorBinding;
+
+
+/**
+ * Tool calls on beans with this binding are written to the trace file
+ * configured with jdbc.trace.file, see TraceRecorder.
+ */
+@InterceptorBinding
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.TYPE, ElementType.METHOD })
+public @interface Traced {
+}
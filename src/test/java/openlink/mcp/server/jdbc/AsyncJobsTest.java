@@ -0,0 +1,196 @@
+package openlink.mcp.server.jdbc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+class AsyncJobsTest {
+
+    private AsyncJobs jobs;
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @BeforeEach
+    void setUp()
+    {
+        jobs = new AsyncJobs();
+        jobs.THREADS = Optional.of(2);
+        jobs.CACHE_SIZE = Optional.of(2);
+        jobs.CACHE_TTL_S = Optional.of(60L);
+        jobs.JOB_RETENTION_S = Optional.of(60L);
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        jobs.shutdown();
+    }
+
+    /** Stands in for a slow AI procedure. */
+    private Callable<String> slow(String result, long ms)
+    {
+        return () -> {
+            calls.incrementAndGet();
+            Thread.sleep(ms);
+            return result;
+        };
+    }
+
+    @Test
+    void runsOnCallersThread() throws Exception
+    {
+        Thread caller = Thread.currentThread();
+        String name = jobs.call(() -> Thread.currentThread() == caller ? "caller" : "other", "a");
+        assertEquals("caller", name);
+    }
+
+    @Test
+    void syncCallsAreNotLimitedByPool() throws Exception
+    {
+        int n = 6;
+        CountDownLatch all = new CountDownLatch(n);
+        ExecutorService callers = Executors.newFixedThreadPool(n);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                String part = "q" + i;
+                // only completes once every call runs at the same time
+                results.add(callers.submit(() -> jobs.call(() -> {
+                    all.countDown();
+                    all.await();
+                    return part;
+                }, part)));
+            }
+            for (int i = 0; i < n; i++)
+                assertEquals("q" + i, results.get(i).get());
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    void coalescesIdenticalCalls() throws Exception
+    {
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++)
+                results.add(callers.submit(() -> jobs.call(slow("r", 300), "proc", "prompt")));
+            for (Future<String> f : results)
+                assertEquals("r", f.get());
+        } finally {
+            callers.shutdownNow();
+        }
+        assertEquals(1, calls.get());
+        assertEquals(3L, jobs.stats().get("coalesced"));
+    }
+
+    @Test
+    void cachesResults() throws Exception
+    {
+        assertEquals("r", jobs.call(slow("r", 0), "proc", "prompt"));
+        assertEquals("r", jobs.call(slow("x", 0), "proc", "prompt"));
+        assertEquals(1, calls.get());
+        assertEquals(1L, jobs.stats().get("cache_hits"));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() throws Exception
+    {
+        jobs.call(slow("a", 0), "a");
+        jobs.call(slow("b", 0), "b");
+        jobs.call(slow("a", 0), "a");
+        jobs.call(slow("c", 0), "c");
+        jobs.call(slow("b", 0), "b");
+        assertEquals(4, calls.get());
+        assertEquals(2, jobs.stats().get("cached"));
+    }
+
+    @Test
+    void expiresResults() throws Exception
+    {
+        jobs.CACHE_TTL_S = Optional.of(1L);
+        jobs.call(slow("r", 0), "proc", "prompt");
+        jobs.call(slow("r", 0), "proc", "prompt");
+        assertEquals(1, calls.get());
+
+        Thread.sleep(1100);
+        jobs.call(slow("r", 0), "proc", "prompt");
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void keyIncludesEveryPart() throws Exception
+    {
+        jobs.call(slow("r", 0), "proc", "url", "user", "secret", "prompt");
+        jobs.call(slow("r", 0), "proc", "url", "user", "other", "prompt");
+        jobs.call(slow("r", 0), "proc", "url", "user", null, "prompt");
+        // parts are delimited, so moving a boundary changes the key
+        jobs.call(slow("r", 0), "proc", "url", "users", "ecret", "prompt");
+        assertEquals(4, calls.get());
+    }
+
+    @Test
+    void doesNotCacheFailures() throws Exception
+    {
+        Callable<String> failing = () -> {
+            calls.incrementAndGet();
+            throw new SQLException("Procedure failed");
+        };
+        SQLException e = assertThrows(SQLException.class, () -> jobs.call(failing, "proc"));
+        assertEquals("Procedure failed", e.getMessage());
+        assertThrows(SQLException.class, () -> jobs.call(failing, "proc"));
+        assertEquals(2, calls.get());
+        assertEquals(0, jobs.stats().get("in_flight"));
+    }
+
+    @Test
+    void reportsJobStatus() throws Exception
+    {
+        AsyncJobs.Job job = jobs.start("jdbc_ai_test", slow("r", 300), "proc", "prompt");
+        assertEquals("running", jobs.status(job.id, 0).get("status"));
+
+        Map<String, Object> done = jobs.status(job.id, 5000);
+        assertEquals("done", done.get("status"));
+        assertEquals("r", done.get("result"));
+        assertEquals("jdbc_ai_test", done.get("tool"));
+
+        // a later identical call is served from the cache
+        assertSame("r", jobs.call(slow("x", 0), "proc", "prompt"));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void reportsJobFailure() throws Exception
+    {
+        AsyncJobs.Job job = jobs.start("jdbc_ai_test", () -> {
+            throw new SQLException("Procedure failed");
+        }, "proc");
+        Map<String, Object> failed = jobs.status(job.id, 5000);
+        assertEquals("failed", failed.get("status"));
+        assertEquals("Procedure failed", failed.get("error"));
+    }
+
+    @Test
+    void unknownJob() throws Exception
+    {
+        assertNull(jobs.status("no-such-job", 0));
+    }
+}
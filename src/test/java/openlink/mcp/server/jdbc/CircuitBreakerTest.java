@@ -0,0 +1,92 @@
+package openlink.mcp.server.jdbc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+
+class CircuitBreakerTest {
+
+    private final CircuitBreaker breaker = new CircuitBreaker(3, 100, 1000);
+
+    private void fail(int n, long now)
+    {
+        for (int i = 0; i < n; i++) {
+            breaker.tryAcquire(now);
+            breaker.onFailure(now);
+        }
+    }
+
+    @Test
+    void opensAfterThreshold()
+    {
+        fail(2, 0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        fail(1, 0);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertEquals(100, breaker.retryInMs(0));
+        assertFalse(breaker.tryAcquire(50));
+    }
+
+    @Test
+    void successResetsFailures()
+    {
+        fail(2, 0);
+        breaker.onSuccess();
+        fail(2, 0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void halfOpenLetsOneTrialThrough()
+    {
+        fail(3, 0);
+        assertTrue(breaker.tryAcquire(100));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertFalse(breaker.tryAcquire(100));
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void failedTrialReopensWithDoubledBackoff()
+    {
+        fail(3, 0);
+        assertTrue(breaker.tryAcquire(100));
+        breaker.onFailure(100);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertEquals(200, breaker.retryInMs(100));
+    }
+
+    @Test
+    void failuresWhileOpenDoNotExtendBackoff()
+    {
+        fail(3, 0);
+        // calls let through before the circuit opened fail afterwards
+        for (int i = 0; i < 10; i++)
+            breaker.onFailure(10);
+        assertEquals(90, breaker.retryInMs(10));
+    }
+
+    @Test
+    void probeFailuresDoubleBackoffUpToMax()
+    {
+        fail(3, 0);
+        long[] expected = { 200, 400, 800, 1000, 1000 };
+        for (long e : expected) {
+            breaker.onProbeFailure(0);
+            assertEquals(e, breaker.retryInMs(0));
+        }
+    }
+
+    @Test
+    void probeSuccessMovesToHalfOpen()
+    {
+        fail(3, 0);
+        breaker.onProbeSuccess();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertTrue(breaker.tryAcquire(1));
+    }
+}
@@ -0,0 +1,261 @@
+package openlink.mcp.server.jdbc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+class ConnectionHealthTest {
+
+    private static final String URL = StubDriver.url("db");
+    // passed by a caller rather than configured
+    private static final String OTHER = StubDriver.url("other");
+
+    private ConnectionHealth health;
+    private StubDriver.Server server;
+
+    @BeforeEach
+    void setUp()
+    {
+        server = StubDriver.server("db");
+        health = new ConnectionHealth();
+        health.jdbcUrl = URL;
+        health.jdbcUser = Optional.empty();
+        health.jdbcPassword = Optional.empty();
+        health.REPLICA_URLS = Optional.empty();
+        health.FAILURE_THRESHOLD = Optional.of(3);
+        health.BACKOFF_MS = Optional.of(50L);
+        health.MAX_BACKOFF_MS = Optional.of(400L);
+        health.VALIDATE_TIMEOUT_S = Optional.of(1);
+        health.VALIDATE_INTERVAL_MS = Optional.of(0L);
+        health.LOGIN_TIMEOUT_S = Optional.empty();
+        health.IDLE_TIMEOUT_MS = Optional.empty();
+        health.WARMUP = Optional.of(false);
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        health.shutdown();
+        DriverManager.setLoginTimeout(0);
+    }
+
+    /** Connects the way the tools do: errors are also passed to recordError. */
+    private SQLException fail(String password)
+    {
+        SQLException e = assertThrows(SQLException.class, () -> health.connect(URL, null, password));
+        health.recordError(URL, e);
+        return e;
+    }
+
+    private Map<String, Object> status()
+    {
+        return health.status().get(0);
+    }
+
+    private Set<Object> urls()
+    {
+        return health.status().stream().map(s -> s.get("url")).collect(Collectors.toSet());
+    }
+
+    @Test
+    void countsEachFailureOnce()
+    {
+        server.down = true;
+        fail(null);
+        fail(null);
+        assertEquals("CLOSED", status().get("state"));
+        assertEquals(2, status().get("consecutive_failures"));
+        fail(null);
+        assertEquals("OPEN", status().get("state"));
+        assertEquals(3, server.attempts.get());
+    }
+
+    @Test
+    void failsFastWithoutExtendingBackoff()
+    {
+        health.BACKOFF_MS = Optional.of(10000L);
+        health.MAX_BACKOFF_MS = Optional.of(60000L);
+        server.down = true;
+        for (int i = 0; i < 3; i++)
+            fail(null);
+        String lastError = (String) status().get("last_error");
+
+        for (int i = 0; i < 20; i++) {
+            SQLException e = fail(null);
+            assertTrue(e instanceof ConnectionHealth.CircuitOpenException);
+        }
+        assertEquals(3, server.attempts.get());
+        assertEquals(lastError, status().get("last_error"));
+        assertTrue((Long) status().get("retry_in_ms") <= 10000);
+    }
+
+    @Test
+    void failsFastAgainstSlowServer()
+    {
+        server.down = true;
+        server.delayMs = 200;
+        for (int i = 0; i < 3; i++)
+            fail(null);
+
+        long start = System.nanoTime();
+        fail(null);
+        assertTrue((System.nanoTime() - start) / 1000000 < 100);
+    }
+
+    @Test
+    void authErrorsDoNotOpenCircuit()
+    {
+        for (int i = 0; i < 10; i++)
+            assertEquals("28000", fail("wrong").getSQLState());
+        assertEquals("CLOSED", status().get("state"));
+        assertEquals(0, status().get("consecutive_failures"));
+    }
+
+    @Test
+    void otherErrorsProveServerIsUp() throws SQLException
+    {
+        server.down = true;
+        fail(null);
+        fail(null);
+        server.down = false;
+        try (Connection conn = health.connect(URL, null, null)) {
+            health.recordError(URL, new SQLException("Syntax error", "42000"));
+        }
+        assertEquals(0, status().get("consecutive_failures"));
+    }
+
+    @Test
+    void probeClosesCircuitWhenServerRecovers() throws Exception
+    {
+        // a caller with a wrong password must not keep the circuit open
+        health.jdbcPassword = Optional.of(StubDriver.PASSWORD);
+        server.down = true;
+        for (int i = 0; i < 3; i++)
+            fail("wrong");
+        assertEquals("OPEN", status().get("state"));
+
+        server.down = false;
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!"HALF_OPEN".equals(status().get("state")) && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals("HALF_OPEN", status().get("state"));
+
+        try (Connection conn = health.connect(URL, null, StubDriver.PASSWORD)) {
+            assertNotNull(conn);
+        }
+        assertEquals("CLOSED", status().get("state"));
+    }
+
+    @Test
+    void driverCrashDuringTrialReopensCircuit() throws Exception
+    {
+        server.down = true;
+        for (int i = 0; i < 3; i++)
+            fail(null);
+
+        server.down = false;
+        server.crash = new IllegalStateException("driver bug");
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!"HALF_OPEN".equals(status().get("state")) && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals("HALF_OPEN", status().get("state"));
+
+        assertThrows(IllegalStateException.class, () -> health.connect(URL, null, null));
+        assertEquals("OPEN", status().get("state"));
+        assertEquals("driver bug", status().get("last_error"));
+
+        // the trial was released, so the next one gets through
+        server.crash = null;
+        Connection conn = null;
+        deadline = System.currentTimeMillis() + 2000;
+        while (conn == null && System.currentTimeMillis() < deadline) {
+            try {
+                conn = health.connect(URL, null, null);
+            } catch (ConnectionHealth.CircuitOpenException e) {
+                Thread.sleep(10);
+            }
+        }
+        assertNotNull(conn);
+        conn.close();
+        assertEquals("CLOSED", status().get("state"));
+    }
+
+    @Test
+    void probesBackOffWhileServerIsDown() throws Exception
+    {
+        server.down = true;
+        for (int i = 0; i < 3; i++)
+            fail(null);
+
+        // probes at 50, 150, 350 and 750 ms after the trip
+        Thread.sleep(500);
+        int probes = server.attempts.get() - 3;
+        assertTrue(probes >= 2 && probes <= 4, "probes: " + probes);
+        assertEquals("OPEN", status().get("state"));
+    }
+
+    @Test
+    void callerUrlsAreNotProbed() throws Exception
+    {
+        StubDriver.Server other = StubDriver.server("other");
+        other.down = true;
+        for (int i = 0; i < 3; i++)
+            assertThrows(SQLException.class, () -> health.connect(OTHER, null, null));
+        assertTrue(health.isOpen(OTHER));
+
+        Thread.sleep(300);
+        assertEquals(3, other.attempts.get());
+
+        // the backoff has expired, so the next call is the trial
+        other.down = false;
+        try (Connection conn = health.connect(OTHER, null, null)) {
+            assertNotNull(conn);
+        }
+        assertTrue(!health.isOpen(OTHER));
+    }
+
+    @Test
+    void validatesConfiguredUrlsOnly() throws Exception
+    {
+        StubDriver.Server other = StubDriver.server("other");
+        health.VALIDATE_INTERVAL_MS = Optional.of(50L);
+        health.onStart(null);
+        assertEquals(10, DriverManager.getLoginTimeout());
+
+        health.connect(URL, null, null).close();
+        health.connect(OTHER, null, null).close();
+        Thread.sleep(300);
+        assertTrue(server.attempts.get() > 2, "attempts: " + server.attempts.get());
+        assertEquals(1, other.attempts.get());
+    }
+
+    @Test
+    void forgetsIdleCallerUrls() throws Exception
+    {
+        String third = StubDriver.url("third");
+        StubDriver.server("third");
+        StubDriver.server("other");
+        health.IDLE_TIMEOUT_MS = Optional.of(50L);
+        health.connect(URL, null, null).close();
+        health.connect(OTHER, null, null).close();
+        assertEquals(Set.of(URL, OTHER), urls());
+
+        Thread.sleep(100);
+        health.connect(third, null, null).close();
+        assertEquals(Set.of(URL, third), urls());
+    }
+}
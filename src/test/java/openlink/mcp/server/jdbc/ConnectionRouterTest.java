@@ -0,0 +1,199 @@
+package openlink.mcp.server.jdbc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+class ConnectionRouterTest {
+
+    private static final String PRIMARY = StubDriver.url("primary");
+    private static final String REPLICA1 = StubDriver.url("replica1");
+    private static final String REPLICA2 = StubDriver.url("replica2");
+
+    private ConnectionHealth health;
+    private ConnectionRouter router;
+    private StubDriver.Server primary;
+    private StubDriver.Server replica1;
+    private StubDriver.Server replica2;
+
+    @BeforeEach
+    void setUp()
+    {
+        primary = StubDriver.server("primary");
+        replica1 = StubDriver.server("replica1");
+        replica2 = StubDriver.server("replica2");
+
+        health = new ConnectionHealth();
+        health.jdbcUrl = PRIMARY;
+        health.jdbcUser = Optional.empty();
+        health.jdbcPassword = Optional.empty();
+        health.REPLICA_URLS = Optional.of(List.of(REPLICA1, REPLICA2));
+        health.IDLE_TIMEOUT_MS = Optional.empty();
+        health.FAILURE_THRESHOLD = Optional.of(1);
+        health.BACKOFF_MS = Optional.of(60000L);
+        health.MAX_BACKOFF_MS = Optional.of(60000L);
+        health.VALIDATE_TIMEOUT_S = Optional.of(1);
+
+        router = new ConnectionRouter();
+        router.health = health;
+        router.jdbcUrl = PRIMARY;
+        router.REPLICA_URLS = Optional.of(List.of(REPLICA1, REPLICA2));
+        router.READ_YOUR_WRITES_MS = Optional.of(200L);
+        router.init();
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        health.shutdown();
+    }
+
+    /** Opens and closes a connection, returns the URL it was routed to. */
+    private String route(String user, boolean readOnly) throws SQLException
+    {
+        try (Connection conn = router.connect(user, null, null, readOnly)) {
+            return router.lastRouted();
+        }
+    }
+
+    @Test
+    void readsGoToReplicas() throws SQLException
+    {
+        assertNotEquals(PRIMARY, route("u", true));
+        assertEquals(0, primary.attempts.get());
+    }
+
+    @Test
+    void writesGoToPrimary() throws SQLException
+    {
+        assertEquals(PRIMARY, route("u", false));
+    }
+
+    @Test
+    void explicitUrlIsNotRouted() throws SQLException
+    {
+        try (Connection conn = router.connect("u", null, REPLICA2, false)) {
+            assertEquals(REPLICA2, router.lastRouted());
+        }
+    }
+
+    @Test
+    void readsFollowWritesOfSameUser() throws Exception
+    {
+        route("u", false);
+        assertEquals(PRIMARY, route("u", true));
+        assertNotEquals(PRIMARY, route("v", true));
+
+        Thread.sleep(250);
+        assertNotEquals(PRIMARY, route("u", true));
+    }
+
+    @Test
+    void prefersIdleReplica() throws SQLException
+    {
+        try (Connection busy = router.connect("u", null, null, true)) {
+            String first = router.lastRouted();
+            String second = route("u", true);
+            assertNotEquals(PRIMARY, second);
+            assertNotEquals(first, second);
+        }
+    }
+
+    @Test
+    void skipsReplicasWithOpenCircuit() throws SQLException
+    {
+        replica1.down = true;
+        replica2.down = true;
+
+        // each failed replica falls back to the primary and opens its circuit
+        assertEquals(PRIMARY, route("u", true));
+        assertEquals(PRIMARY, route("u", true));
+        assertTrue(health.isOpen(REPLICA1) && health.isOpen(REPLICA2));
+        assertEquals(1, replica1.attempts.get());
+        assertEquals(1, replica2.attempts.get());
+
+        // then replicas are no longer tried
+        assertEquals(PRIMARY, route("u", true));
+        assertEquals(1, replica1.attempts.get());
+        assertEquals(1, replica2.attempts.get());
+        assertEquals(3L, router.status().get("fallbacks_to_primary"));
+    }
+
+    @Test
+    void writesDoNotFallBack()
+    {
+        primary.down = true;
+        assertThrows(SQLException.class, () -> route("u", false));
+        assertEquals(0, replica1.attempts.get() + replica2.attempts.get());
+    }
+
+
+    @Test
+    void classifiesReads()
+    {
+        for (String sql : List.of(
+                "select 1",
+                "select * from t;",
+                "  /* hint */ SELECT * FROM t  ",
+                "-- leading comment\nselect * from t",
+                "WITH x AS (SELECT 1 AS a) SELECT a FROM x",
+                "SPARQL SELECT ?s WHERE { ?s ?p ?o } LIMIT 10",
+                "select * from (sparql select ?s where { ?s ?p ?o }) as s",
+                "EXPLAIN SELECT * FROM t",
+                "explain('select * from t')",
+                "DESCRIBE t",
+                "SHOW TABLES",
+                "VALUES (1), (2)"))
+            assertTrue(ConnectionRouter.isReadOnly(sql), sql);
+    }
+
+    @Test
+    void classifiesWrites()
+    {
+        for (String sql : List.of(
+                "",
+                "insert into t values (1)",
+                "update t set a = 1",
+                "delete from t",
+                "call proc()",
+                "create table t (a int)",
+                // batches
+                "select 1; drop table t",
+                "select 1; delete from t",
+                "SELECT 1;\nDELETE FROM t;",
+                "select '--'; delete from t",
+                "select 1 -- ; \n; delete from t",
+                // statements that write
+                "EXPLAIN ANALYZE DELETE FROM t",
+                "explain (analyze, buffers) select * from t",
+                "explain analyse select * from t",
+                "DESCRIBE ANALYZE SELECT * FROM t",
+                "SELECT * INTO t2 FROM t",
+                "select a into @x from t",
+                "select * from t for update",
+                "select * from t for  update nowait",
+                "WITH d AS (DELETE FROM t RETURNING *) SELECT * FROM d",
+                "with u as (update t set a = 1 returning a) select a from u",
+                "WITH x AS (SELECT 1) INSERT INTO t SELECT * FROM x",
+                "SPARQL INSERT DATA { <s> <p> <o> }",
+                "sparql clear graph <urn:g>",
+                "SPARQL DELETE WHERE { ?s ?p ?o }",
+                "select * from (sparql insert into <urn:g> { <s> <p> <o> }) as s",
+                // unclear, e.g. a write keyword in a comment
+                "select /* into */ 1"))
+            assertFalse(ConnectionRouter.isReadOnly(sql), sql);
+        assertFalse(ConnectionRouter.isReadOnly(null));
+    }
+}
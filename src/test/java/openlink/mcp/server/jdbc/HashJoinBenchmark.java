@@ -0,0 +1,54 @@
+package openlink.mcp.server.jdbc;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+
+/**
+ * Times HashJoin on generated rows, outside of the test suite:
+ *
+ *   java ... openlink.mcp.server.jdbc.HashJoinBenchmark [left rows] [right rows] [budget KB] [keys]
+ *
+ * Defaults to 1,000,000 x 1,000,000 rows, a 64 MB budget and one key per
+ * left row; keys=1 runs the fully skewed case.
+ */
+public class HashJoinBenchmark {
+
+    private static HashJoin.RowSource rows(int n, long keys, String tag)
+    {
+        int[] i = { 0 };
+        return () -> {
+            if (i[0] >= n)
+                return null;
+            int r = i[0]++;
+            return new String[] { Long.toString(r * 7919L % keys), tag + r, "payload-" + r };
+        };
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        int left = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int right = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+        long budget = (args.length > 2 ? Long.parseLong(args[2]) : 64 << 10) << 10;
+        long keys = args.length > 3 ? Long.parseLong(args[3]) : left;
+        Path spillDir = Files.createTempDirectory("join-bench");
+
+        try {
+            for (int run = 1; run <= 3; run++) {
+                long[] matches = { 0 };
+                long start = System.nanoTime();
+                HashJoin join = new HashJoin(new int[] { 0 }, new int[] { 0 }, budget, spillDir);
+                join.run(rows(left, keys, "l"), rows(right, keys, "r"), (l, r) -> {
+                    matches[0]++;
+                    return true;
+                });
+                System.out.printf("run %d: %d x %d rows, budget %d KB: %d matches in %d ms, "
+                    + "%d spill files, %d MB spilled, %d nested loop passes%n",
+                    run, left, right, budget >> 10, matches[0], (System.nanoTime() - start) / 1000000,
+                    join.spilledPartitions, join.spilledBytes >> 20, join.nestedLoopPasses);
+            }
+        } finally {
+            Files.deleteIfExists(spillDir);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package openlink.mcp.server.jdbc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+class HashJoinTest {
+
+    private Path spillDir;
+
+    @BeforeEach
+    void setUp() throws IOException
+    {
+        spillDir = Files.createTempDirectory("join-test");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException
+    {
+        try (Stream<Path> files = Files.walk(spillDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+        }
+    }
+
+    private static HashJoin.RowSource source(List<String[]> rows)
+    {
+        int[] i = { 0 };
+        return () -> i[0] < rows.size() ? rows.get(i[0]++) : null;
+    }
+
+    /** n rows keyed (i * 7919) % keys, padded to make rows large enough to spill. */
+    private static List<String[]> rows(int n, int keys, String tag, int pad)
+    {
+        String padding = "x".repeat(pad);
+        List<String[]> rows = new ArrayList<>(n);
+        for (int i = 0; i < n; i++)
+            rows.add(new String[] { Long.toString(i * 7919L % keys), tag + i, padding });
+        return rows;
+    }
+
+    /** The number of matches a plain nested loop join finds. */
+    private static long expected(List<String[]> left, List<String[]> right)
+    {
+        Map<String, Long> counts = new HashMap<>();
+        for (String[] r : right) {
+            if (r[0] != null)
+                counts.merge(r[0], 1L, Long::sum);
+        }
+        long n = 0;
+        for (String[] l : left) {
+            if (l[0] != null)
+                n += counts.getOrDefault(l[0], 0L);
+        }
+        return n;
+    }
+
+    private long join(HashJoin join, List<String[]> left, List<String[]> right) throws Exception
+    {
+        long[] matches = { 0 };
+        assertTrue(join.run(source(left), source(right), (l, r) -> {
+            assertEquals(l[0], r[0]);
+            assertTrue(l[1].startsWith("l") && r[1].startsWith("r"));
+            matches[0]++;
+            return true;
+        }));
+        return matches[0];
+    }
+
+    private long spillFiles() throws IOException
+    {
+        try (Stream<Path> files = Files.list(spillDir)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    void joinsInMemory() throws Exception
+    {
+        List<String[]> left = rows(1000, 300, "l", 0);
+        List<String[]> right = rows(5000, 500, "r", 0);
+        HashJoin join = new HashJoin(new int[] { 0 }, new int[] { 0 }, 64 << 20, spillDir);
+        assertEquals(expected(left, right), join(join, left, right));
+        assertEquals(0, join.spilledPartitions);
+    }
+
+    @Test
+    void budgetCoversHashIndex() throws Exception
+    {
+        assertEquals(12 * 1000 + 4 * 2048, HashJoin.tableBytes(1000));
+        assertEquals(12 * 1025 + 4 * 4096, HashJoin.tableBytes(1025));
+
+        // the rows alone fit the budget, with the hash index they do not
+        long budget = HashJoin.MIN_MEMORY_BUDGET;
+        int n = 0;
+        long bytes = 0;
+        List<String[]> left = rows(20000, 1000, "l", 0);
+        List<String[]> right = rows(20000, 1000, "r", 0);
+        while (bytes + HashJoin.tableBytes(n) <= budget) {
+            bytes += HashJoin.rowBytes(left.get(n)) + HashJoin.rowBytes(right.get(n));
+            n++;
+        }
+        assertTrue(bytes <= budget, "rows: " + bytes);
+        left = left.subList(0, n);
+        right = right.subList(0, n);
+
+        HashJoin join = new HashJoin(new int[] { 0 }, new int[] { 0 }, budget, spillDir);
+        assertEquals(expected(left, right), join(join, left, right));
+        assertTrue(join.spilledPartitions > 0);
+    }
+
+    @Test
+    void spillsAndCleansUp() throws Exception
+    {
+        List<String[]> left = rows(20000, 20000, "l", 100);
+        List<String[]> right = rows(30000, 20000, "r", 100);
+        HashJoin join = new HashJoin(new int[] { 0 }, new int[] { 0 }, HashJoin.MIN_MEMORY_BUDGET, spillDir);
+        assertEquals(expected(left, right), join(join, left, right));
+        assertTrue(join.spilledPartitions > 0);
+        assertEquals(0, spillFiles());
+    }
+
+    @Test
+    void smallBudgetDoesNotMultiplySpillFiles() throws Exception
+    {
+        List<String[]> left = rows(60000, 60000, "l", 0);
+        List<String[]> right = rows(50000, 60000, "r", 0);
+        HashJoin join = new HashJoin(new int[] { 0 }, new int[] { 0 }, 2048, spillDir);
+        assertEquals(expected(left, right), join(join, left, right));
+        // one level of partitioning is enough for partitions this size
+        assertTrue(join.spilledPartitions <= 32, "spill files: " + join.spilledPartitions);
+    }
+
+    @Test
+    void skewedKeyIsNotPartitionedAgain() throws Exception
+    {
+        List<String[]> left = rows(2000, 1, "l", 600);
+        List<String[]> right = rows(3000, 1, "r", 600);
+        HashJoin join = new HashJoin(new int[] { 0 }, new int[] { 0 }, HashJoin.MIN_MEMORY_BUDGET, spillDir);
+        assertEquals(2000L * 3000L, join(join, left, right));
+        // a single partition per side, joined in several nested loop passes
+        assertEquals(2, join.spilledPartitions);
+        assertTrue(join.nestedLoopPasses > 1);
+        assertEquals(0, spillFiles());
+    }
+
+    @Test
+    void skewedKeyAmongOthers() throws Exception
+    {
+        List<String[]> left = rows(20000, 20000, "l", 100);
+        List<String[]> right = rows(20000, 20000, "r", 100);
+        for (int i = 0; i < 4000; i++) {
+            left.add(new String[] { "hot", "lh" + i, "x".repeat(100) });
+            right.add(new String[] { "hot", "rh" + i, "x".repeat(100) });
+        }
+        HashJoin join = new HashJoin(new int[] { 0 }, new int[] { 0 }, HashJoin.MIN_MEMORY_BUDGET, spillDir);
+        assertEquals(expected(left, right), join(join, left, right));
+        assertEquals(0, spillFiles());
+    }
+
+    @Test
+    void nullKeysNeverMatch() throws Exception
+    {
+        List<String[]> left = new ArrayList<>(rows(100, 10, "l", 0));
+        List<String[]> right = new ArrayList<>(rows(100, 10, "r", 0));
+        left.add(new String[] { null, "l-null", null });
+        right.add(new String[] { null, "r-null", null });
+        HashJoin join = new HashJoin(new int[] { 0 }, new int[] { 0 }, 64 << 20, spillDir);
+        assertEquals(expected(left, right), join(join, left, right));
+    }
+
+    @Test
+    void joinsOnSeveralColumns() throws Exception
+    {
+        List<String[]> left = List.of(new String[] { "1", "a", "l1" }, new String[] { "1", "b", "l2" });
+        List<String[]> right = List.of(new String[] { "r1", "a", "1" }, new String[] { "r2", "b", "2" });
+        List<String> matches = new ArrayList<>();
+        HashJoin join = new HashJoin(new int[] { 0, 1 }, new int[] { 2, 1 }, 64 << 20, spillDir);
+        join.run(source(left), source(right), (l, r) -> matches.add(l[2] + r[0]));
+        assertEquals(List.of("l1r1"), matches);
+    }
+
+    @Test
+    void stopsEarlyAndCleansUp() throws Exception
+    {
+        List<String[]> left = rows(20000, 100, "l", 100);
+        List<String[]> right = rows(20000, 100, "r", 100);
+        int[] seen = { 0 };
+        HashJoin join = new HashJoin(new int[] { 0 }, new int[] { 0 }, HashJoin.MIN_MEMORY_BUDGET, spillDir);
+        assertFalse(join.run(source(left), source(right), (l, r) -> ++seen[0] < 10));
+        assertEquals(10, seen[0]);
+        assertTrue(join.spilledPartitions > 0);
+        assertEquals(0, spillFiles());
+    }
+
+    @Test
+    void rejectsMismatchedKeys()
+    {
+        assertThrows(IllegalArgumentException.class,
+            () -> new HashJoin(new int[] { 0 }, new int[] { 0, 1 }, 64 << 20, spillDir));
+    }
+}
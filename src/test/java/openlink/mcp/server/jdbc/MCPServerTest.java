@@ -0,0 +1,139 @@
+package openlink.mcp.server.jdbc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.quarkiverse.mcp.server.ToolCallException;
+
+
+class MCPServerTest {
+
+    private static final String URL = StubDriver.url("ai");
+    private static final String OTHER = StubDriver.url("ai-other");
+    private static final String PROC = "DEMO.DBA.OAI_TEST";
+
+    private StubDriver.Server server;
+    private StubDriver.Server other;
+    private ConnectionHealth health;
+    private AsyncJobs jobs;
+    private MCPServer mcp;
+
+    @BeforeEach
+    void setUp()
+    {
+        server = StubDriver.server("ai");
+        other = StubDriver.server("ai-other");
+
+        health = new ConnectionHealth();
+        health.jdbcUrl = URL;
+        health.jdbcUser = Optional.empty();
+        health.jdbcPassword = Optional.empty();
+        health.REPLICA_URLS = Optional.empty();
+        health.IDLE_TIMEOUT_MS = Optional.empty();
+        health.FAILURE_THRESHOLD = Optional.of(1);
+        health.BACKOFF_MS = Optional.of(60000L);
+        health.MAX_BACKOFF_MS = Optional.of(60000L);
+        health.VALIDATE_TIMEOUT_S = Optional.of(1);
+
+        ConnectionRouter router = new ConnectionRouter();
+        router.health = health;
+        router.jdbcUrl = URL;
+        router.REPLICA_URLS = Optional.empty();
+        router.READ_YOUR_WRITES_MS = Optional.empty();
+        router.init();
+
+        jobs = new AsyncJobs();
+        jobs.THREADS = Optional.of(2);
+        jobs.CACHE_SIZE = Optional.of(16);
+        jobs.CACHE_TTL_S = Optional.of(60L);
+        jobs.JOB_RETENTION_S = Optional.of(60L);
+
+        mcp = new MCPServer();
+        mcp.mapper = new ObjectMapper();
+        mcp.health = health;
+        mcp.router = router;
+        mcp.jobs = jobs;
+        mcp.jdbcUrl = URL;
+        mcp.jdbcUser = Optional.empty();
+        mcp.jdbcPassword = Optional.empty();
+        mcp.API_KEY = Optional.of("sk-test");
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        jobs.shutdown();
+        health.shutdown();
+    }
+
+    private String ai(String prompt, Optional<String> api_key, String password, String url)
+    {
+        return mcp._ai_func("test", PROC, prompt, api_key, false, null, password, url);
+    }
+
+    @Test
+    void coalescesSlowCalls() throws Exception
+    {
+        server.queryMs = 300;
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++)
+                results.add(callers.submit(() -> ai("hello", Optional.empty(), null, null)));
+            for (Future<String> f : results)
+                assertEquals("echo:hello", f.get());
+        } finally {
+            callers.shutdownNow();
+        }
+        assertEquals(List.of("select " + PROC + "(?, ?) as result [hello, sk-test]"), server.queries);
+        assertEquals(3L, jobs.stats().get("coalesced"));
+    }
+
+    @Test
+    void keyIncludesEveryArgument()
+    {
+        ai("hello", Optional.empty(), null, null);
+        ai("hello", Optional.empty(), null, null);
+        assertEquals(1, server.queries.size());
+
+        ai("other prompt", Optional.empty(), null, null);
+        ai("hello", Optional.of("sk-other"), null, null);
+        ai("hello", Optional.empty(), StubDriver.PASSWORD, null);
+        mcp._ai_func("test", "DEMO.DBA.OAI_OTHER", "hello", Optional.empty(), false, null, null, null);
+        mcp._ai_func("test", PROC, "hello", Optional.empty(), false, "dba", null, null);
+        assertEquals(6, server.queries.size());
+
+        ai("hello", Optional.empty(), null, OTHER);
+        assertEquals(1, other.queries.size());
+    }
+
+    @Test
+    void errorsReachConnectionHealth()
+    {
+        server.dropQueries = true;
+        ToolCallException e = assertThrows(ToolCallException.class, () -> ai("hello", Optional.empty(), null, null));
+        assertTrue(e.getMessage().contains("Connection dropped"), e.getMessage());
+        assertTrue(health.isOpen(URL));
+
+        other.dropQueries = true;
+        assertThrows(ToolCallException.class, () -> ai("hello", Optional.empty(), null, OTHER));
+        assertTrue(health.isOpen(OTHER));
+        for (Map<String, Object> s : health.status())
+            assertEquals("Connection dropped", s.get("last_error"));
+    }
+}
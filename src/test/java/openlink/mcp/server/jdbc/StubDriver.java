@@ -0,0 +1,197 @@
+package openlink.mcp.server.jdbc;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLInvalidAuthorizationSpecException;
+import java.sql.SQLNonTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+
+/**
+ * JDBC driver for jdbc:stub:NAME URLs that stands in for a database server.
+ * A server can be up, drop every connection, or delay its connections, and
+ * it only accepts the password "secret" (or none). A crash makes the driver
+ * itself throw instead. Prepared queries are logged with their parameters,
+ * may be slow or dropped, and return one row echoing their first parameter.
+ */
+public class StubDriver implements Driver {
+
+    static final String PASSWORD = "secret";
+
+    static class Server {
+        volatile boolean down;
+        volatile long delayMs;
+        volatile RuntimeException crash;
+        volatile long queryMs;
+        volatile boolean dropQueries;
+        final List<String> queries = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger attempts = new AtomicInteger();
+    }
+
+    private static final Map<String, Server> servers = new ConcurrentHashMap<>();
+
+    static {
+        try {
+            DriverManager.registerDriver(new StubDriver());
+        } catch (SQLException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /** Returns a fresh, running server and its URL. */
+    static Server server(String name)
+    {
+        Server s = new Server();
+        servers.put(name, s);
+        return s;
+    }
+
+    static String url(String name)
+    {
+        return "jdbc:stub:" + name;
+    }
+
+    @Override
+    public Connection connect(String url, Properties info) throws SQLException
+    {
+        if (!acceptsURL(url))
+            return null;
+        Server s = servers.get(url.substring("jdbc:stub:".length()));
+        if (s == null)
+            throw new SQLNonTransientConnectionException("Connection refused", "08001");
+        s.attempts.incrementAndGet();
+
+        if (s.delayMs > 0) {
+            try {
+                Thread.sleep(s.delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (s.down)
+            throw new SQLNonTransientConnectionException("Connection dropped", "08S01");
+        if (s.crash != null)
+            throw s.crash;
+
+        String password = info.getProperty("password");
+        if (password != null && !password.equals(PASSWORD))
+            throw new SQLInvalidAuthorizationSpecException("Bad password", "28000");
+
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+            new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "isValid":
+                        return !s.down;
+                    case "isClosed":
+                        return false;
+                    case "prepareStatement":
+                        return statement(s, (String) args[0]);
+                    case "close":
+                        return null;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        throw new SQLFeatureNotSupportedException(method.getName());
+                }
+            });
+    }
+
+    private static PreparedStatement statement(Server s, String sql)
+    {
+        List<Object> params = new ArrayList<>();
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+            new Class<?>[] { PreparedStatement.class }, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "setString":
+                        int i = (Integer) args[0];
+                        while (params.size() < i)
+                            params.add(null);
+                        params.set(i - 1, args[1]);
+                        return null;
+                    case "executeQuery":
+                        s.queries.add(sql + " " + params);
+                        if (s.queryMs > 0)
+                            Thread.sleep(s.queryMs);
+                        if (s.dropQueries)
+                            throw new SQLNonTransientConnectionException("Connection dropped", "08S01");
+                        return row("echo:" + (params.isEmpty() ? null : params.get(0)));
+                    case "close":
+                        return null;
+                    default:
+                        throw new SQLFeatureNotSupportedException(method.getName());
+                }
+            });
+    }
+
+    private static ResultSet row(String value)
+    {
+        boolean[] read = { false };
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+            new Class<?>[] { ResultSet.class }, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "next":
+                        boolean more = !read[0];
+                        read[0] = true;
+                        return more;
+                    case "getString":
+                        return value;
+                    case "close":
+                        return null;
+                    default:
+                        throw new SQLFeatureNotSupportedException(method.getName());
+                }
+            });
+    }
+
+    @Override
+    public boolean acceptsURL(String url)
+    {
+        return url != null && url.startsWith("jdbc:stub:");
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info)
+    {
+        return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion()
+    {
+        return 1;
+    }
+
+    @Override
+    public int getMinorVersion()
+    {
+        return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant()
+    {
+        return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException
+    {
+        throw new SQLFeatureNotSupportedException();
+    }
+}
@@ -0,0 +1,135 @@
+package openlink.mcp.server.jdbc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+
+import jakarta.interceptor.InvocationContext;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.quarkiverse.mcp.server.ToolCallException;
+
+
+class TraceInterceptorTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final TraceInterceptor interceptor = new TraceInterceptor();
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws IOException
+    {
+        file = Files.createTempFile("trace", ".jsonl");
+        interceptor.recorder = new TraceRecorder();
+        interceptor.recorder.mapper = mapper;
+        interceptor.recorder.TRACE_FILE = Optional.of(file.toString());
+        interceptor.recorder.init();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException
+    {
+        interceptor.recorder.close();
+        Files.delete(file);
+    }
+
+    private static InvocationContext context(Method method, Object[] params, Callable<Object> proceed)
+    {
+        return (InvocationContext) Proxy.newProxyInstance(InvocationContext.class.getClassLoader(),
+            new Class<?>[] { InvocationContext.class }, (proxy, m, args) -> {
+                switch (m.getName()) {
+                    case "getMethod":
+                        return method;
+                    case "getParameters":
+                        return params;
+                    case "proceed":
+                        return proceed.call();
+                    default:
+                        throw new UnsupportedOperationException(m.getName());
+                }
+            });
+    }
+
+    private static Object[] aiParams(boolean async)
+    {
+        return new Object[] { null, "hello", Optional.of("sk-secret"), Optional.of(async), "dba", "dba", "jdbc:virtuoso://db:1111" };
+    }
+
+    /** The recorded calls, without the session line. */
+    private List<Map<String, Object>> calls() throws IOException
+    {
+        List<Map<String, Object>> calls = new ArrayList<>();
+        for (String line : Files.readAllLines(file)) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> event = mapper.readValue(line, Map.class);
+            if (!event.containsKey("session"))
+                calls.add(event);
+        }
+        return calls;
+    }
+
+    @Test
+    void recordsToolCalls() throws Exception
+    {
+        Method m = TraceRecorderTest.tool("jdbc_virtuoso_support_ai");
+        String result = "{\"job_id\":\"j1\",\"status\":\"running\"}";
+        assertSame(result, interceptor.trace(context(m, aiParams(true), () -> result)));
+
+        List<Map<String, Object>> calls = calls();
+        assertEquals(1, calls.size());
+        Map<String, Object> call = calls.get(0);
+        assertEquals("jdbc_virtuoso_support_ai", call.get("tool"));
+        assertEquals(Map.of("prompt", "hello", "async", true), call.get("args"));
+        assertEquals(true, call.get("ok"));
+        assertEquals("j1", call.get("job"));
+    }
+
+    @Test
+    void recordsFailures() throws Exception
+    {
+        Method m = TraceRecorderTest.tool("jdbc_virtuoso_support_ai");
+        assertThrows(ToolCallException.class, () -> interceptor.trace(context(m, aiParams(false), () -> {
+            throw new ToolCallException("Failed");
+        })));
+        assertEquals(false, calls().get(0).get("ok"));
+        assertEquals(null, calls().get(0).get("job"));
+    }
+
+    @Test
+    void skipsOtherMethods() throws Exception
+    {
+        Method m = MCPServer.class.getDeclaredMethod("_ai_func", String.class, String.class, String.class,
+            Optional.class, boolean.class, String.class, String.class, String.class);
+        interceptor.trace(context(m, new Object[8], () -> "x"));
+        assertEquals(0, calls().size());
+    }
+
+    @Test
+    void skipsReplayedCalls() throws Exception
+    {
+        Method m = TraceRecorderTest.tool("jdbc_virtuoso_support_ai");
+        TraceRecorder.SUPPRESSED.set(true);
+        try {
+            interceptor.trace(context(m, aiParams(false), () -> "x"));
+        } finally {
+            TraceRecorder.SUPPRESSED.remove();
+        }
+        assertEquals(0, calls().size());
+    }
+}
@@ -0,0 +1,156 @@
+package openlink.mcp.server.jdbc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+import java.util.zip.ZipException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+
+class TraceRecorderTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private Path dir;
+
+    @BeforeEach
+    void setUp() throws IOException
+    {
+        dir = Files.createTempDirectory("trace-test");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException
+    {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+        }
+    }
+
+    private TraceRecorder recorder(Path file)
+    {
+        TraceRecorder r = new TraceRecorder();
+        r.mapper = mapper;
+        r.TRACE_FILE = Optional.of(file.toString());
+        r.init();
+        return r;
+    }
+
+    static Method tool(String name)
+    {
+        for (Method m : MCPServer.class.getDeclaredMethods()) {
+            if (m.getName().equals(name))
+                return m;
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+    /** Records a jdbc_execute_query call with connection arguments. */
+    private void recordQuery(TraceRecorder r, String query)
+    {
+        Method m = tool("jdbc_execute_query");
+        Object[] params = new Object[m.getParameterCount()];
+        for (int i = 0; i < params.length; i++) {
+            String name = m.getParameters()[i].getName();
+            Class<?> type = m.getParameterTypes()[i];
+            if (name.equals("query"))
+                params[i] = query;
+            else if (type == Optional.class)
+                params[i] = name.equals("max_rows") ? Optional.of(10) : Optional.empty();
+            else if (type == String.class)
+                params[i] = "jdbc:virtuoso://db:1111/UID=dba/PWD=" + name;
+        }
+        r.record(m, params, null, System.nanoTime(), 1000, true);
+    }
+
+    private List<Map<String, Object>> read(Path file) throws IOException
+    {
+        List<Map<String, Object>> events = new ArrayList<>();
+        try (BufferedReader in = TraceRecorder.reader(file)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> event = mapper.readValue(line, Map.class);
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    @Test
+    void dropsConnectionArguments() throws IOException
+    {
+        Path file = dir.resolve("trace.jsonl");
+        TraceRecorder r = recorder(file);
+        recordQuery(r, "select 1");
+        r.close();
+
+        List<Map<String, Object>> events = read(file);
+        assertEquals(2, events.size());
+        assertTrue(events.get(0).containsKey("session"));
+        Map<String, Object> call = events.get(1);
+        assertEquals("jdbc_execute_query", call.get("tool"));
+        assertEquals(Map.of("query", "select 1", "max_rows", 10), call.get("args"));
+        assertTrue(!Files.readString(file).contains("PWD"));
+    }
+
+    @Test
+    void readsUnclosedTraceAppendedTo() throws IOException
+    {
+        Path file = dir.resolve("trace.jsonl.gz");
+        // the first server is killed: its recorder is never closed
+        TraceRecorder killed = recorder(file);
+        recordQuery(killed, "select 1");
+        recordQuery(killed, "select 2");
+
+        TraceRecorder next = recorder(file);
+        recordQuery(next, "select 3");
+        next.close();
+
+        // and the trace of a server killed before its first call
+        recorder(file);
+        TraceRecorder last = recorder(file);
+        recordQuery(last, "select 4");
+
+        List<String> lines = new ArrayList<>();
+        for (Map<String, Object> e : read(file))
+            lines.add(e.containsKey("session") ? "session" : (String) ((Map<?, ?>) e.get("args")).get("query"));
+        assertEquals(List.of("session", "select 1", "select 2", "session", "select 3", "session", "session", "select 4"), lines);
+    }
+
+    @Test
+    void reportsOtherDamage() throws IOException
+    {
+        Path file = dir.resolve("trace.jsonl.gz");
+        TraceRecorder r = recorder(file);
+        for (int i = 0; i < 100; i++)
+            recordQuery(r, "select " + i);
+        r.close();
+
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 0x55;
+        Files.write(file, bytes);
+        assertThrows(ZipException.class, () -> {
+            try (BufferedReader in = TraceRecorder.reader(file)) {
+                while (in.readLine() != null)
+                    ;
+            }
+        });
+    }
+}
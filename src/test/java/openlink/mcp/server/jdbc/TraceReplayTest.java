@@ -0,0 +1,175 @@
+package openlink.mcp.server.jdbc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.quarkiverse.mcp.server.McpLog;
+import io.quarkiverse.mcp.server.ToolCallException;
+
+
+class TraceReplayTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private static Method replayTool() throws NoSuchMethodException
+    {
+        return TraceReplay.class.getDeclaredMethod("jdbc_replay_trace", McpLog.class, String.class,
+            Optional.class, Optional.class, String.class, String.class, String.class);
+    }
+
+    private static TraceReplay.Call call(long t, String name)
+    {
+        return new TraceReplay.Call(t, TraceRecorderTest.tool(name), new Object[0], null, null);
+    }
+
+    @Test
+    void timelineSortsSessionsAndPlaysThemInTurn()
+    {
+        // lines are written as calls complete, so t is not in order
+        List<TraceReplay.Call> first = new ArrayList<>(List.of(call(30, "jdbc_get_tables"),
+            call(10, "jdbc_get_schemas"), call(20, "jdbc_describe_table")));
+        List<TraceReplay.Call> second = new ArrayList<>(List.of(call(5, "jdbc_get_tables"), call(0, "jdbc_get_schemas")));
+
+        List<TraceReplay.Call> calls = TraceReplay.timeline(List.of(first, second));
+        List<Long> t = new ArrayList<>();
+        List<String> tools = new ArrayList<>();
+        for (TraceReplay.Call c : calls) {
+            t.add(c.t);
+            tools.add(c.method.getName());
+        }
+        assertEquals(List.of(10L, 20L, 30L, 30L, 35L), t);
+        assertEquals(List.of("jdbc_get_schemas", "jdbc_describe_table", "jdbc_get_tables",
+            "jdbc_get_schemas", "jdbc_get_tables"), tools);
+    }
+
+    @Test
+    void convertsArguments() throws Exception
+    {
+        // JSON numbers come back as Integer, Long or Double
+        Map<String, Object> args = new HashMap<>();
+        args.put("file", "trace.jsonl");
+        args.put("concurrency", 8L);
+        args.put("speedup", 2);
+        Object[] values = TraceReplay.arguments(replayTool(), args);
+        assertNull(values[0]);
+        assertEquals("trace.jsonl", values[1]);
+        assertEquals(Optional.of(8), values[2]);
+        assertEquals(Optional.of(2.0), values[3]);
+
+        Object[] ai = TraceReplay.arguments(TraceRecorderTest.tool("jdbc_virtuoso_support_ai"),
+            Map.of("prompt", "hello", "async", true));
+        assertEquals("hello", ai[1]);
+        assertEquals(Optional.empty(), ai[2]);
+        assertEquals(Optional.of(true), ai[3]);
+        assertNull(ai[4]);
+    }
+
+    @Test
+    void convertsValues()
+    {
+        assertEquals(5, TraceReplay.convert(5L, Integer.class));
+        assertEquals(5L, TraceReplay.convert(5, Long.class));
+        assertEquals(0.5, TraceReplay.convert(0.5f, Double.class));
+        assertEquals("10", TraceReplay.convert(10, String.class));
+        assertEquals(Boolean.TRUE, TraceReplay.convert(true, Boolean.class));
+        assertNull(TraceReplay.convert(null, Integer.class));
+        assertThrows(IllegalArgumentException.class, () -> TraceReplay.convert("x", Boolean.class));
+    }
+
+    @Test
+    void percentiles()
+    {
+        long[] ms = new long[100];
+        for (int i = 0; i < ms.length; i++)
+            ms[i] = (i + 1) * 1000000L;
+        assertEquals(50.0, TraceReplay.percentileMs(ms, 50));
+        assertEquals(90.0, TraceReplay.percentileMs(ms, 90));
+        assertEquals(99.0, TraceReplay.percentileMs(ms, 99));
+        assertEquals(100.0, TraceReplay.percentileMs(ms, 100));
+
+        assertEquals(1.23, TraceReplay.percentileMs(new long[] { 1234567 }, 50));
+        assertEquals(2.0, TraceReplay.percentileMs(new long[] { 1000000, 2000000, 3000000 }, 50));
+        assertEquals(0.0, TraceReplay.percentileMs(new long[0], 99));
+    }
+
+
+    /** Answers async calls with a new job id and remembers the polled ids. */
+    static class JobServer extends MCPServer {
+        final List<String> polled = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        String jdbc_virtuoso_support_ai(McpLog log, String prompt, Optional<String> api_key, Optional<Boolean> async,
+                                        String user, String password, String url)
+        {
+            return "{\"job_id\":\"new-" + prompt + "\",\"status\":\"running\"}";
+        }
+
+        @Override
+        String jdbc_job_status(McpLog log, String job_id, Optional<Integer> wait_ms)
+        {
+            polled.add(job_id);
+            return "{\"status\":\"done\"}";
+        }
+    }
+
+    private String line(Map<String, Object> event) throws IOException
+    {
+        return mapper.writeValueAsString(event) + "\n";
+    }
+
+    @Test
+    void pollsReplayedJobs() throws Exception
+    {
+        Path file = Files.createTempFile("trace", ".jsonl");
+        try {
+            Files.writeString(file, line(Map.of("session", 1))
+                + line(Map.of("t", 0, "tool", "jdbc_virtuoso_support_ai", "args", Map.of("prompt", "a", "async", true),
+                              "us", 100, "ok", true, "job", "old-a"))
+                + line(Map.of("t", 5, "tool", "jdbc_job_status", "args", Map.of("job_id", "old-a", "wait_ms", 1000),
+                              "us", 100, "ok", true))
+                // started before the trace began
+                + line(Map.of("t", 6, "tool", "jdbc_job_status", "args", Map.of("job_id", "old-b"),
+                              "us", 100, "ok", true)));
+
+            JobServer server = new JobServer();
+            TraceReplay replay = new TraceReplay();
+            replay.mapper = mapper;
+            replay.server = server;
+            replay.REPLAY_ENABLED = Optional.of(true);
+            Map<?, ?> report = mapper.readValue(replay.jdbc_replay_trace(null, file.toString(),
+                Optional.of(2), Optional.of(0.0), null, null, null), Map.class);
+
+            assertEquals(2, report.get("calls"));
+            assertEquals(0, report.get("errors"));
+            assertEquals(1, report.get("skipped"));
+            assertEquals(List.of("new-a"), server.polled);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void disabledByDefault()
+    {
+        TraceReplay replay = new TraceReplay();
+        replay.REPLAY_ENABLED = Optional.empty();
+        assertThrows(ToolCallException.class, () -> replay.jdbc_replay_trace(null, "trace.jsonl",
+            Optional.empty(), Optional.empty(), null, null, null));
+    }
+}